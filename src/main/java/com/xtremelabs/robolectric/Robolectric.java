@@ -394,6 +394,7 @@ public class Robolectric {
         ShadowMimeTypeMap.reset();
         ShadowPowerManager.reset();
         ShadowStatFs.reset();
+        ShadowSQLiteDatabase.reset();
     }
 
     public static <T> T directlyOn(T shadowedObject) {
@@ -33,8 +33,14 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Installs a {@link RobolectricClassLoader} and {@link com.xtremelabs.robolectric.res.ResourceLoader} in order to
@@ -46,7 +52,13 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
   	private static InstrumentDetector instrumentDetector = InstrumentDetector.DEFAULT;
 
     private static RobolectricClassLoader defaultLoader;
+    // the default loader isn't one of these, since addClassOrPackageToInstrument() changes what it instruments
+    private static Map<LoaderKey, RobolectricClassLoader> loaderForInstrumentedClasses = new HashMap<LoaderKey, RobolectricClassLoader>();
+    private static int loadersCreated;
+    private static int loadersReused;
     private static Map<RobolectricConfig, ResourceLoader> resourceLoaderForRootAndDirectory = new HashMap<RobolectricConfig, ResourceLoader>();
+    // runners may be created on parallel threads
+    private static ConcurrentHashMap<RobolectricConfig, ResourceLoader> prefetchingResourceLoaders = new ConcurrentHashMap<RobolectricConfig, ResourceLoader>();
 
     // fields in the RobolectricTestRunner in the original ClassLoader
     private RobolectricClassLoader classLoader;
@@ -57,18 +69,89 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
 	// fields in the RobolectricTestRunner in the instrumented ClassLoader
     protected RobolectricConfig robolectricConfig;
 
-    private static RobolectricClassLoader getDefaultLoader() {
+    /**
+     * @return the loader set with {@link #setDefaultLoader(Loader)}, or else the one loader shared by every runner
+     *         that doesn't ask for its own, which {@link #addClassOrPackageToInstrument(String)} adds to
+     */
+    static synchronized RobolectricClassLoader getDefaultLoader() {
         if (defaultLoader == null) {
-            defaultLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
+            defaultLoader = createLoader(ShadowWrangler.getInstance(), new ArrayList<String>());
         }
         return defaultLoader;
     }
 
+    /**
+     * For tests: replaces the default loader, with null to have the next runner create one.
+     *
+     * @return the loader it replaced
+     */
+    static synchronized RobolectricClassLoader replaceDefaultLoader(RobolectricClassLoader robolectricClassLoader) {
+        RobolectricClassLoader replacedLoader = defaultLoader;
+        defaultLoader = robolectricClassLoader;
+        return replacedLoader;
+    }
+
+    /**
+     * Returns a class loader that instruments the given classes or packages along with the Android classes, for the
+     * default SDK version and Robolectric's own shadows.
+     *
+     * @param classesOrPackagesToInstrument fully-qualified class or package names
+     * @see #getLoaderInstrumenting(int, ClassHandler, String...)
+     */
+    protected static RobolectricClassLoader getLoaderInstrumenting(String... classesOrPackagesToInstrument) {
+        return getLoaderInstrumenting(Robolectric.DEFAULT_SDK_VERSION, ShadowWrangler.getInstance(), classesOrPackagesToInstrument);
+    }
+
+    /**
+     * Returns a class loader that instruments the given classes or packages along with the Android classes. Loaders
+     * are shared by all runners asking for the same classes, SDK version and class handler, so pass the result to
+     * {@link #RobolectricTestRunner(Class, ClassHandler, RobolectricClassLoader, RobolectricConfig)} rather than
+     * creating your own {@link RobolectricClassLoader} if you need to instrument more classes.
+     *
+     * @param sdkVersion                    the SDK version the tests run against
+     * @param classHandler                  the class handler that binds shadows to the instrumented classes
+     * @param classesOrPackagesToInstrument fully-qualified class or package names
+     */
+    protected static synchronized RobolectricClassLoader getLoaderInstrumenting(int sdkVersion, ClassHandler classHandler,
+                                                                                String... classesOrPackagesToInstrument) {
+        Set<String> instrumentedClasses = new TreeSet<String>(Arrays.asList(classesOrPackagesToInstrument));
+        LoaderKey loaderKey = new LoaderKey(instrumentedClasses, sdkVersion, classHandler);
+        RobolectricClassLoader loader = loaderForInstrumentedClasses.get(loaderKey);
+        if (loader != null) {
+            loadersReused++;
+            return loader;
+        }
+
+        loader = createLoader(classHandler, new ArrayList<String>(instrumentedClasses));
+        loaderForInstrumentedClasses.put(loaderKey, loader);
+        return loader;
+    }
+
+    private static RobolectricClassLoader createLoader(ClassHandler classHandler, List<String> instrumentedClasses) {
+        RobolectricClassLoader loader = new RobolectricClassLoader(classHandler, instrumentedClasses);
+        // the DatabaseMap is created outside the loader and handed in, so its types have to be delegated before the
+        // first test class is bootstrapped, in case verifying it loads them
+        loader.delegateLoadingOf(DatabaseMap.class.getName());
+        loader.delegateLoadingOf(DatabaseConfig.SnapshotDatabaseMap.class.getName());
+        loader.delegateLoadingOf(DatabaseConfig.DatabaseSnapshot.class.getName());
+        if (Boolean.getBoolean("robolectric.prefetchClasses")) {
+            loader.prefetchHotClasses();
+        }
+        if (loadersCreated++ == 0 && Boolean.getBoolean("robolectric.logClassLoaderStats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override public void run() {
+                    System.out.println("Robolectric class loaders: " + loadersCreated + " created, " + loadersReused + " reused");
+                }
+            });
+        }
+        return loader;
+    }
+
     public static void setInstrumentDetector(final InstrumentDetector detector) {
       instrumentDetector = detector;
     }
 
-    public static void setDefaultLoader(Loader robolectricClassLoader) {
+    public static synchronized void setDefaultLoader(Loader robolectricClassLoader) {
     	//used by the RoboSpecs project to allow for mixed scala\java tests to be run with Maven Surefire (see the RoboSpecs project on github)
         if (defaultLoader == null) {
             defaultLoader = (RobolectricClassLoader)robolectricClassLoader;
@@ -84,7 +167,9 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
      */
     protected static void addClassOrPackageToInstrument(String classOrPackageToBeInstrumented) {
         if (!isInstrumented()) {
-            defaultLoader.addCustomShadowClass(classOrPackageToBeInstrumented);
+            synchronized (RobolectricTestRunner.class) {
+                getDefaultLoader().addCustomShadowClass(classOrPackageToBeInstrumented);
+            }
         }
     }
 
@@ -228,6 +313,8 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
             delegateLoadingOf(ShadowWrangler.class.getName());
             delegateLoadingOf(RobolectricConfig.class.getName());
             delegateLoadingOf(DatabaseMap.class.getName());
+            delegateLoadingOf(DatabaseConfig.SnapshotDatabaseMap.class.getName());
+            delegateLoadingOf(DatabaseConfig.DatabaseSnapshot.class.getName());
             delegateLoadingOf(android.R.class.getName());
 
             Class<?> delegateClass = classLoader.bootstrap(this.getClass());
@@ -319,6 +406,9 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
 
     @Override public void setRobolectricConfig(final RobolectricConfig robolectricConfig) {
         this.robolectricConfig = robolectricConfig;
+        if (ResourceLoader.isParallelLoadingEnabled()) {
+            prefetchResources(robolectricConfig);
+        }
     }
 
     /**
@@ -598,16 +688,15 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
         ResourceLoader resourceLoader = resourceLoaderForRootAndDirectory.get(robolectricConfig);
         
         if (resourceLoader == null ) {
-            try {
-                robolectricConfig.validate();
-
-                String rClassName = robolectricConfig.getRClassName();
-                Class rClass = Class.forName(rClassName);
-                resourceLoader = new ResourceLoader(robolectricConfig.getRealSdkVersion(), rClass, robolectricConfig.getResourceDirectory(), robolectricConfig.getAssetsDirectory() );
-                resourceLoaderForRootAndDirectory.put(robolectricConfig, resourceLoader);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            resourceLoader = prefetchingResourceLoaders.remove(robolectricConfig);
+            if (resourceLoader == null) {
+                try {
+                    resourceLoader = newResourceLoader(robolectricConfig);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
             }
+            resourceLoaderForRootAndDirectory.put(robolectricConfig, resourceLoader);
         }
         
         // When locale has changed, reload values resource files.
@@ -619,6 +708,32 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
         return resourceLoader;
     }
 
+    private ResourceLoader newResourceLoader(final RobolectricConfig robolectricConfig) throws Exception {
+        robolectricConfig.validate();
+
+        String rClassName = robolectricConfig.getRClassName();
+        Class rClass = Class.forName(rClassName);
+        return new ResourceLoader(robolectricConfig.getRealSdkVersion(), rClass, robolectricConfig.getResourceDirectory(), robolectricConfig.getAssetsDirectory() );
+    }
+
+    /**
+     * Starts loading the resources in the background as soon as the runner is set up, before the first test needs them.
+     */
+    private void prefetchResources(final RobolectricConfig robolectricConfig) {
+        if (resourceLoaderForRootAndDirectory.containsKey(robolectricConfig) || prefetchingResourceLoaders.containsKey(robolectricConfig)) {
+            return;
+        }
+
+        try {
+            ResourceLoader resourceLoader = newResourceLoader(robolectricConfig);
+            if (prefetchingResourceLoaders.putIfAbsent(robolectricConfig, resourceLoader) == null) {
+                resourceLoader.prefetchResources();
+            }
+        } catch (Exception e) {
+            // createResourceLoader() will run into this again when the resources are needed
+        }
+    }
+
     private String findResourcePackageName(final File projectManifestFile) throws ParserConfigurationException, IOException, SAXException {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         DocumentBuilder db = dbf.newDocumentBuilder();
@@ -656,6 +771,39 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
 		this.databaseMap = databaseMap;
 	}
 
+    /**
+     * What a pooled class loader was created for.
+     */
+    private static class LoaderKey {
+        private final Set<String> instrumentedClasses;
+        private final int sdkVersion;
+        private final ClassHandler classHandler;
+
+        private LoaderKey(Set<String> instrumentedClasses, int sdkVersion, ClassHandler classHandler) {
+            this.instrumentedClasses = instrumentedClasses;
+            this.sdkVersion = sdkVersion;
+            this.classHandler = classHandler;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            LoaderKey loaderKey = (LoaderKey) o;
+            return sdkVersion == loaderKey.sdkVersion && classHandler == loaderKey.classHandler
+                    && instrumentedClasses.equals(loaderKey.instrumentedClasses);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = instrumentedClasses.hashCode();
+            result = 31 * result + sdkVersion;
+            result = 31 * result + System.identityHashCode(classHandler);
+            return result;
+        }
+    }
+
 	/**
 	 * Detects whether current instance is already instrumented.
 	 */
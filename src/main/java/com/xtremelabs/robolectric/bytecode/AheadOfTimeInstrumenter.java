@@ -0,0 +1,136 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Instruments every class in a set of jars that {@link AndroidTranslator} would instrument, using a
+ * {@link ParallelInstrumenter}, and puts the results in the {@link ClassCache}, so test runs find them there instead
+ * of instrumenting them as they're loaded.
+ * <p/>
+ * Usage: {@code java -cp <test classpath> com.xtremelabs.robolectric.bytecode.AheadOfTimeInstrumenter [-threads n] [jar...]}
+ * <p/>
+ * Without any jars, every jar on the classpath is looked at. The {@code aot-instrumentation} Maven profile runs this
+ * before the tests.
+ */
+public class AheadOfTimeInstrumenter {
+    private final AndroidTranslator androidTranslator;
+    private final ClassCache classCache;
+    private final int threadCount;
+    private Map<String, Exception> failures = new HashMap<String, Exception>();
+
+    public AheadOfTimeInstrumenter(AndroidTranslator androidTranslator, ClassCache classCache, int threadCount) {
+        this.androidTranslator = androidTranslator;
+        this.classCache = classCache;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return the number of classes that failed to instrument
+     */
+    public int instrument(List<File> jars) throws IOException, InterruptedException {
+        URL[] jarUrls = new URL[jars.size()];
+        for (int i = 0; i < jarUrls.length; i++) {
+            jarUrls[i] = jars.get(i).toURI().toURL();
+        }
+        ClassLoader classLoader = new URLClassLoader(jarUrls, AheadOfTimeInstrumenter.class.getClassLoader());
+        ParallelInstrumenter parallelInstrumenter = new ParallelInstrumenter(androidTranslator, classCache, classLoader, threadCount);
+
+        Set<String> seenClassNames = new HashSet<String>();
+        for (File jar : jars) {
+            JarFile jarFile = new JarFile(jar);
+            try {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String entryName = entry.getName();
+                    if (!entryName.endsWith(".class")) {
+                        continue;
+                    }
+
+                    // the first jar on the classpath wins, just like when the class is loaded
+                    String className = entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+                    if (androidTranslator.isOnInstrumentingList(className) && seenClassNames.add(className)) {
+                        parallelInstrumenter.instrument(className, readFully(jarFile.getInputStream(entry)));
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+        }
+        int failureCount = parallelInstrumenter.finish();
+        failures = parallelInstrumenter.getFailures();
+        return failureCount;
+    }
+
+    /**
+     * @return why each class that failed to instrument in the last {@link #instrument(List)} failed, by class name
+     */
+    public Map<String, Exception> getFailures() {
+        return failures;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        List<File> jars = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads")) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else {
+                jars.add(new File(args[i]));
+            }
+        }
+        if (jars.isEmpty()) {
+            for (String classPathEntry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                if (classPathEntry.endsWith(".jar")) {
+                    jars.add(new File(classPathEntry));
+                }
+            }
+        }
+
+        ClassCache classCache = RobolectricClassLoader.createClassCache();
+        AndroidTranslator androidTranslator = new AndroidTranslator(ShadowWrangler.getInstance(), classCache);
+
+        long startTime = System.currentTimeMillis();
+        AheadOfTimeInstrumenter aheadOfTimeInstrumenter = new AheadOfTimeInstrumenter(androidTranslator, classCache, threadCount);
+        int failureCount = aheadOfTimeInstrumenter.instrument(jars);
+        System.out.println("Instrumented " + classCache.getMissCount() + " classes (" + classCache.getHitCount()
+                + " were already cached) with " + threadCount + " threads in "
+                + (System.currentTimeMillis() - startTime) + "ms: " + classCache);
+
+        if (failureCount > 0) {
+            for (Map.Entry<String, Exception> failure : aheadOfTimeInstrumenter.getFailures().entrySet()) {
+                System.err.println("Couldn't instrument " + failure.getKey() + ": " + failure.getValue());
+            }
+            System.err.println(failureCount + " classes couldn't be instrumented");
+            System.exit(1);
+        }
+    }
+}
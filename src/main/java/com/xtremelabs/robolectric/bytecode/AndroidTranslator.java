@@ -8,6 +8,7 @@ import javassist.*;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @SuppressWarnings({"UnusedDeclaration"})
 public class AndroidTranslator implements Translator {
@@ -15,14 +16,15 @@ public class AndroidTranslator implements Translator {
      * IMPORTANT -- increment this number when the bytecode generated for modified classes changes
      * so the cache file can be invalidated.
      */
-    public static final int CACHE_VERSION = 21;
+    public static final int CACHE_VERSION = 24;
 
     private static final List<ClassHandler> CLASS_HANDLERS = new ArrayList<ClassHandler>();
 
     private ClassHandler classHandler;
     private ClassCache classCache;
-    private final List<String> instrumentingList = new ArrayList<String>();
-    private final List<String> instrumentingExcludeList = new ArrayList<String>();
+    // read by background instrumenter threads while runners add custom shadow classes
+    private final CopyOnWriteArrayList<String> instrumentingList = new CopyOnWriteArrayList<String>();
+    private final List<String> instrumentingExcludeList = new CopyOnWriteArrayList<String>();
 
     public AndroidTranslator(ClassHandler classHandler, ClassCache classCache) {
         this.classHandler = classHandler;
@@ -45,9 +47,7 @@ public class AndroidTranslator implements Translator {
     }
 
     public void addCustomShadowClass(String customShadowClassName) {
-        if (!instrumentingList.contains(customShadowClassName)) {
-            instrumentingList.add(customShadowClassName);
-        }
+        instrumentingList.addIfAbsent(customShadowClassName);
     }
 
     public static ClassHandler getClassHandler(int index) {
@@ -76,10 +76,6 @@ public class AndroidTranslator implements Translator {
 
     @Override
     public void onLoad(ClassPool classPool, String className) throws NotFoundException, CannotCompileException {
-        if (classCache.isWriting()) {
-            throw new IllegalStateException("shouldn't be modifying bytecode after we've started writing cache! class=" + className);
-        }
-
         if (classHasFromAndroidEquivalent(className)) {
             replaceClassWithFromAndroidEquivalent(classPool, className);
             return;
@@ -118,18 +114,45 @@ public class AndroidTranslator implements Translator {
         } else if (ctClass.isInterface() || ctClass.hasAnnotation(DoNotInstrument.class)) {
             return false;
         } else {
-            for (String klassName : instrumentingExcludeList) {
-                if (ctClass.getName().startsWith(klassName)) {
-                    return false;
-                }
+            return isOnInstrumentingList(ctClass.getName());
+        }
+    }
+
+    /**
+     * @return whether classes with this name are instrumented, unless they're interfaces or say otherwise through
+     *         {@link Instrument} or {@link DoNotInstrument}
+     */
+    /* package */ boolean isOnInstrumentingList(String className) {
+        for (String klassName : instrumentingExcludeList) {
+            if (className.startsWith(klassName)) {
+                return false;
             }
-            for (String klassName : instrumentingList) {
-                if (ctClass.getName().startsWith(klassName)) {
-                    return true;
-                }
+        }
+        for (String klassName : instrumentingList) {
+            if (className.startsWith(klassName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the entries of the instrumenting and exclude lists that match classes with this name, which, along with
+     *         the class itself, decide whether and how it's instrumented
+     */
+    /* package */ String getInstrumentingListEntriesFor(String className) {
+        StringBuilder entries = new StringBuilder();
+        for (String klassName : instrumentingExcludeList) {
+            if (className.startsWith(klassName)) {
+                entries.append('-').append(klassName).append(';');
+            }
+        }
+        for (String klassName : instrumentingList) {
+            if (className.startsWith(klassName)) {
+                entries.append('+').append(klassName).append(';');
             }
-            return false;
         }
+        return entries.toString();
     }
 
     private boolean classHasFromAndroidEquivalent(String className) {
@@ -1,131 +1,278 @@
 package com.xtremelabs.robolectric.bytecode;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Enumeration;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Keeps instrumented classes on disk, one file per class, named after a hash of the original class bytes, the
+ * instrumenting list entries that apply to the class and the cache version. Changing a class, the instrumenting lists
+ * or the instrumentation just means looking for a different file, so nothing ever has to be invalidated. Files are written to a temporary name and then renamed into place and are never changed
+ * afterwards, so several JVMs (e.g. parallel Surefire forks) can share the same cache directory without any locking:
+ * readers only ever see complete files, and two JVMs publishing the same class write the same bytes.
+ * <p/>
+ * Since old entries are never looked for again once their classes change, the cache is pruned when it's opened: if
+ * its class files add up to more than the maximum size, the least recently used ones are deleted. Hits refresh a
+ * file's modification time at most once a day, so that it tracks when the file was last used.
+ */
 public class ClassCache {
-    private static final Attributes.Name VERSION_ATTRIBUTE = new Attributes.Name("version");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final long STALE_TEMP_FILE_AGE_MILLIS = 60 * 60 * 1000;
+    private static final long LAST_USED_RESOLUTION_MILLIS = 24 * 60 * 60 * 1000;
+    public static final long DEFAULT_MAX_SIZE = 256 * 1024 * 1024;
 
-    private Map<String, byte[]> cachedClasses = new HashMap<String, byte[]>();
-    private boolean startedWriting = false;
+    // the same classes are looked up again by every class loader in the JVM, so don't hash them every time
+    private static final Map<String, MemoizedKey> KEYS_BY_CLASS_NAME = new ConcurrentHashMap<String, MemoizedKey>();
 
-    public ClassCache(String classCachePath, final int expectedCacheVersion) {
-        final File cacheJarFile = new File(classCachePath);
-        JarFile cacheFile;
-        try {
-            cacheFile = new JarFile(cacheJarFile);
-            int cacheVersion = 0;
-            Manifest manifest = cacheFile.getManifest();
-            if (manifest != null) {
-                Attributes attributes = manifest.getEntries().get("robolectric");
-                if (attributes != null) {
-                    String cacheVersionStr = (String) attributes.get(VERSION_ATTRIBUTE);
-                    if (cacheVersionStr != null) {
-                        cacheVersion = Integer.parseInt(cacheVersionStr);
-                    }
+    private final File cacheDirectory;
+    private final int cacheVersion;
+    // per thread, since a class is instrumented on the thread that missed it, and another thread (e.g. a
+    // ParallelInstrumenter's) may miss the same class in the meantime and must not release this thread's key
+    private final ThreadLocal<Map<String, String>> keysOfClassesBeingInstrumented = new ThreadLocal<Map<String, String>>() {
+        @Override protected Map<String, String> initialValue() {
+            return new HashMap<String, String>();
+        }
+    };
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    public ClassCache(String classCachePath, int cacheVersion) {
+        this(classCachePath, cacheVersion, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize how many bytes of classes the cache may keep before the least recently used are deleted
+     */
+    public ClassCache(String classCachePath, int cacheVersion, long maxSize) {
+        this.cacheDirectory = new File(classCachePath);
+        this.cacheVersion = cacheVersion;
+        prune(maxSize);
+    }
+
+    /**
+     * @param originalClassBytes       the class as it would be loaded without instrumentation
+     * @param instrumentingListEntries the instrumenting list entries that decide whether the class is instrumented, as
+     *                                 returned by {@link AndroidTranslator#getInstrumentingListEntriesFor(String)}
+     * @return the instrumented class, or null if it hasn't been cached yet, in which case the next call to
+     *         {@link #addClass(String, byte[])} for the class on the same thread will cache it under the same key
+     */
+    public ByteBuffer getClassBytesFor(String className, byte[] originalClassBytes, String instrumentingListEntries) {
+        String key = keyFor(className, originalClassBytes, instrumentingListEntries);
+        File cacheFile = new File(cacheDirectory, key + ".class");
+        long lastModified = cacheFile.lastModified();
+        if (lastModified != 0) {
+            try {
+                ByteBuffer classBytes = map(cacheFile);
+                hitCount.incrementAndGet();
+                long now = System.currentTimeMillis();
+                if (lastModified < now - LAST_USED_RESOLUTION_MILLIS) {
+                    cacheFile.setLastModified(now);
                 }
+                return classBytes;
+            } catch (IOException e) {
+                // no problem, we'll instrument it again
             }
-            if (cacheVersion != expectedCacheVersion) {
-                cacheJarFile.delete();
-            } else {
-                readEntries(cacheFile);
+        }
+        keysOfClassesBeingInstrumented.get().put(className, key);
+        return null;
+    }
+
+    public void addClass(String className, byte[] classBytes) {
+        String key = keysOfClassesBeingInstrumented.get().remove(className);
+        if (key == null) {
+            return;
+        }
+        missCount.incrementAndGet();
+
+        File tempFile = null;
+        try {
+            if (!cacheDirectory.isDirectory()) {
+                cacheDirectory.mkdirs();
+            }
+            tempFile = File.createTempFile(key, ".tmp", cacheDirectory);
+            FileOutputStream outputStream = new FileOutputStream(tempFile);
+            try {
+                outputStream.write(classBytes);
+            } finally {
+                outputStream.close();
+            }
+            // another JVM may have published the class in the meantime, and on some platforms that makes the rename fail
+            if (tempFile.renameTo(new File(cacheDirectory, key + ".class"))) {
+                tempFile = null;
             }
         } catch (IOException e) {
-            // no problem
+            // no problem, we'll just instrument it again next time
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
         }
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            @Override public void run() {
-                Manifest manifest = new Manifest();
-                Attributes attributes = new Attributes();
-                attributes.put(VERSION_ATTRIBUTE, String.valueOf(expectedCacheVersion));
-                manifest.getEntries().put("robolectric", attributes);
+    /**
+     * Called once a class that wasn't in the cache has been loaded, whether or not it was instrumented, on the thread
+     * that looked for it.
+     */
+    public void finishedLoading(String className) {
+        keysOfClassesBeingInstrumented.get().remove(className);
+    }
+
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of classes that had to be instrumented because they weren't in the cache yet
+     */
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassCache{" + cacheDirectory + ": " + hitCount + " hits, " + missCount + " misses}";
+    }
+
+    /**
+     * Deletes the least recently used classes until the rest fit in {@code maxSize}, along with temp files, which are
+     * only left behind by JVMs that were killed while writing one.
+     */
+    private void prune(long maxSize) {
+        File[] files = cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
 
-                saveAllClassesToCache(cacheJarFile, manifest);
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_AGE_MILLIS;
+        List<CachedClassFile> classFiles = new ArrayList<CachedClassFile>();
+        long totalSize = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                if (file.lastModified() < staleBefore) {
+                    file.delete();
+                }
+            } else if (file.getName().endsWith(".class")) {
+                CachedClassFile classFile = new CachedClassFile(file);
+                classFiles.add(classFile);
+                totalSize += classFile.size;
+            }
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        Collections.sort(classFiles, new Comparator<CachedClassFile>() {
+            @Override public int compare(CachedClassFile o1, CachedClassFile o2) {
+                return o1.lastModified < o2.lastModified ? -1 : (o1.lastModified == o2.lastModified ? 0 : 1);
             }
         });
+        for (CachedClassFile classFile : classFiles) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            // another JVM may be about to map it, in which case it'll just instrument the class again
+            classFile.file.delete();
+            totalSize -= classFile.size;
+        }
     }
 
-    public byte[] getClassBytesFor(String name) {
-        return cachedClasses.get(name);
+    private ByteBuffer map(File cacheFile) throws IOException {
+        FileInputStream inputStream = new FileInputStream(cacheFile);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            inputStream.close();
+        }
     }
 
-    public boolean isWriting() {
-        synchronized (this) {
-            return startedWriting;
+    private String keyFor(String className, byte[] originalClassBytes, String instrumentingListEntries) {
+        MemoizedKey memoizedKey = KEYS_BY_CLASS_NAME.get(className);
+        if (memoizedKey == null || !memoizedKey.isFor(cacheVersion, originalClassBytes, instrumentingListEntries)) {
+            memoizedKey = new MemoizedKey(cacheVersion, originalClassBytes, instrumentingListEntries,
+                    keyFor(originalClassBytes, instrumentingListEntries));
+            KEYS_BY_CLASS_NAME.put(className, memoizedKey);
         }
+        return memoizedKey.key;
     }
 
-    public void addClass(String className, byte[] classBytes) {
-        cachedClasses.put(className, classBytes);
+    private String keyFor(byte[] originalClassBytes, String instrumentingListEntries) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(new byte[] {
+                (byte) (cacheVersion >>> 24), (byte) (cacheVersion >>> 16), (byte) (cacheVersion >>> 8), (byte) cacheVersion
+        });
+        try {
+            digest.update(instrumentingListEntries.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(originalClassBytes);
+
+        char[] key = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            key[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            key[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(key);
     }
 
-    private void readEntries(JarFile cacheFile) {
-        Enumeration<JarEntry> entries = cacheFile.entries();
-        try {
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String className = entry.getName();
-                if (className.endsWith(".class")) {
-                    int classSize = (int) entry.getSize();
-                    InputStream inputStream = cacheFile.getInputStream(entry);
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream(classSize);
-                    int c;
-                    while ((c = inputStream.read()) != -1) {
-                        baos.write(c);
-                    }
-                    className = className.substring(0, className.indexOf(".class")).replace('/', '.');
-                    addClass(className, baos.toByteArray());
-                }
+    private static class CachedClassFile {
+        private final File file;
+        private final long size;
+        private final long lastModified;
 
-            }
-        } catch (IOException e) {
-            // no problem, we didn't want those bytes that much anyway
+        private CachedClassFile(File file) {
+            this.file = file;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
         }
     }
 
-    protected void saveAllClassesToCache(File file, Manifest manifest) {
-        synchronized (this) {
-            startedWriting = true;
-    
-            if (cachedClasses.size() > 0) {
-                JarOutputStream jarOutputStream = null;
-                try {
-                    File cacheJarDir = file.getParentFile();
-                    if (!cacheJarDir.exists()) {
-                        cacheJarDir.mkdirs();
-                    }
-    
-                    jarOutputStream = new JarOutputStream(new FileOutputStream(file), manifest);
-                    for (Map.Entry<String, byte[]> entry : cachedClasses.entrySet()) {
-                        String key = entry.getKey();
-                        jarOutputStream.putNextEntry(new JarEntry(key.replace('.', '/') + ".class"));
-                        jarOutputStream.write(entry.getValue());
-                        jarOutputStream.closeEntry();
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    if (jarOutputStream != null) {
-                        try {
-                            jarOutputStream.close();
-                        } catch (IOException ignore) {
-                        }
-                    }
-                }
-            }
-            startedWriting = false;
+    /**
+     * A class's key, along with a much cheaper hash of the bytes it was computed from, to tell whether another
+     * class loader is loading the same class or a different class with the same name, and with the same instrumenting
+     * list entries.
+     */
+    private static class MemoizedKey {
+        private final int cacheVersion;
+        private final int length;
+        private final int hashCode;
+        private final String instrumentingListEntries;
+        private final String key;
+
+        private MemoizedKey(int cacheVersion, byte[] originalClassBytes, String instrumentingListEntries, String key) {
+            this.cacheVersion = cacheVersion;
+            this.length = originalClassBytes.length;
+            this.hashCode = Arrays.hashCode(originalClassBytes);
+            this.instrumentingListEntries = instrumentingListEntries;
+            this.key = key;
+        }
+
+        private boolean isFor(int cacheVersion, byte[] originalClassBytes, String instrumentingListEntries) {
+            return this.cacheVersion == cacheVersion && length == originalClassBytes.length
+                    && this.instrumentingListEntries.equals(instrumentingListEntries)
+                    && hashCode == Arrays.hashCode(originalClassBytes);
         }
     }
 }
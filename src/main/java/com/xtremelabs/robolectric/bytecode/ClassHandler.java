@@ -13,5 +13,22 @@ public interface ClassHandler {
 
     void afterTest();
 
-    Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable;
+    /**
+     * Called the first time an instrumented method is invoked.
+     *
+     * @param callSiteField the static int field of {@code clazz} the instrumented method keeps its call site id in.
+     *                      While the handler stores the negated id there, the method won't call back into the handler
+     *                      at all.
+     * @return a positive id identifying the method in later calls to {@link #hasShadowImplementation(int)} and
+     *         {@link #methodInvoked(int, Object, Object[])}
+     */
+    int registerCallSite(Class clazz, String callSiteField, String methodName, String[] paramTypes);
+
+    /**
+     * @return false if no shadow could possibly implement the method, in which case the instrumented method skips
+     *         {@link #methodInvoked(int, Object, Object[])} altogether
+     */
+    boolean hasShadowImplementation(int callSiteId);
+
+    Object methodInvoked(int callSiteId, Object instance, Object[] params) throws Throwable;
 }
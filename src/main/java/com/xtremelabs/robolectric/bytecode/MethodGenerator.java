@@ -4,6 +4,7 @@ import javassist.*;
 
 public class MethodGenerator {
     private final CtClass ctClass;
+    private int callSiteCount = 0;
 
     public MethodGenerator(CtClass ctClass) {
         this.ctClass = ctClass;
@@ -197,19 +198,28 @@ public class MethodGenerator {
             METHOD BODY TEMPLATE:
 
             if (!RobolectricInternals.shouldCallDirectly(isStatic ? class : this)) {
-                Object x = RobolectricInternals.methodInvoked(
-                    <className>.class, "<methodName>", isStatic ? null : this,
-                    <paramTypes>,
-                    <params>
-                );
-                if (x != null) {
-                    return ((<returnClass>)x)<unboxing>;
+                if (<callSiteField> >= 0) { // negative while the class handler knows there's no shadow to call
+                    if (<callSiteField> == 0) <callSiteField> = RobolectricInternals.registerCallSite(
+                        <className>.class, "<callSiteField>", "<methodName>",
+                        <paramTypes>
+                    );
+                    if (RobolectricInternals.hasShadowImplementation(<callSiteField>)) {
+                        Object x = RobolectricInternals.methodInvoked(
+                            <callSiteField>, isStatic ? null : this,
+                            <params>
+                        );
+                        if (x != null) {
+                            return ((<returnClass>)x)<unboxing>;
+                        }
+                    }
                 }
                 <optional super call or return default (null/0)>;
             }
 
         */
 
+        String callSiteField = addCallSiteField();
+
         String methodBody;
         StringBuilder buf = new StringBuilder();
         buf.append("if (!");
@@ -218,24 +228,45 @@ public class MethodGenerator {
         buf.append(isStatic ? className + ".class" : "this");
         buf.append(")) {\n");
 
-        if (!returnsVoid) {
-            buf.append("Object x = ");
-        }
+        buf.append("if (");
+        buf.append(callSiteField);
+        buf.append(" >= 0) {\n");
+
+        buf.append("if (");
+        buf.append(callSiteField);
+        buf.append(" == 0) ");
+        buf.append(callSiteField);
+        buf.append(" = ");
         buf.append(RobolectricInternals.class.getName());
-        buf.append(".methodInvoked(\n  ");
+        buf.append(".registerCallSite(\n  ");
         buf.append(className);
         buf.append(".class, \"");
+        buf.append(callSiteField);
+        buf.append("\", \"");
         buf.append(ctMethod.getName());
         buf.append("\", ");
+        appendParamTypeArray(buf, ctMethod);
+        buf.append(");\n");
+
+        buf.append("if (");
+        buf.append(RobolectricInternals.class.getName());
+        buf.append(".hasShadowImplementation(");
+        buf.append(callSiteField);
+        buf.append(")) {\n");
+
+        if (!returnsVoid) {
+            buf.append("Object x = ");
+        }
+        buf.append(RobolectricInternals.class.getName());
+        buf.append(".methodInvoked(\n  ");
+        buf.append(callSiteField);
+        buf.append(", ");
         if (!isStatic) {
             buf.append("this");
         } else {
             buf.append("null");
         }
         buf.append(", ");
-
-        appendParamTypeArray(buf, ctMethod);
-        buf.append(", ");
         appendParamArray(buf, ctMethod);
 
         buf.append(")");
@@ -247,6 +278,8 @@ public class MethodGenerator {
             buf.append(") x)");
             buf.append(returnType.unboxString());
             buf.append(";\n");
+            buf.append("}\n");
+            buf.append("}\n");
             if (shouldGenerateCallToSuper) {
                 buf.append(generateCallToSuper(ctMethod.getName(), ctMethod.getParameterTypes()));
             } else {
@@ -255,6 +288,8 @@ public class MethodGenerator {
                 buf.append(";\n");
             }
         } else {
+            buf.append("}\n");
+            buf.append("}\n");
             buf.append("return;\n");
         }
 
@@ -264,6 +299,36 @@ public class MethodGenerator {
         return methodBody;
     }
 
+    /**
+     * Each instrumented method gets a static field holding its call site id, so the method's name and parameter types
+     * only need to be passed to the {@link ClassHandler} once, the first time the method is called. The id itself is
+     * handed out at runtime rather than baked into the bytecode, so instrumented classes can still be cached.
+     */
+    private String addCallSiteField() throws NotFoundException {
+        String fieldName;
+        do {
+            fieldName = "__callSite" + callSiteCount++ + "__";
+        } while (hasDeclaredField(fieldName));
+
+        try {
+            CtField field = new CtField(CtClass.intType, fieldName, ctClass);
+            field.setModifiers(Modifier.PRIVATE | Modifier.STATIC);
+            ctClass.addField(field);
+        } catch (CannotCompileException e) {
+            throw new RuntimeException(e);
+        }
+        return fieldName;
+    }
+
+    private boolean hasDeclaredField(String fieldName) {
+        try {
+            ctClass.getDeclaredField(fieldName);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
     public void appendParamTypeArray(StringBuilder buf, CtMethod ctMethod) throws NotFoundException {
         CtClass[] parameterTypes = ctMethod.getParameterTypes();
         if (parameterTypes.length == 0) {
@@ -281,10 +346,15 @@ public class MethodGenerator {
         }
     }
 
+    /**
+     * Methods with arguments still box them into a new array on every call that reaches a shadow, since that's what
+     * {@link ClassHandler#methodInvoked} takes; methods without share one empty array.
+     */
     public void appendParamArray(StringBuilder buf, CtMethod ctMethod) throws NotFoundException {
         int parameterCount = ctMethod.getParameterTypes().length;
         if (parameterCount == 0) {
-            buf.append("new Object[0]");
+            buf.append(RobolectricInternals.class.getName());
+            buf.append(".NO_ARGS");
         } else {
             buf.append("new Object[] {");
             for (int i = 0; i < parameterCount; i++) {
@@ -0,0 +1,118 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Instruments classes into the {@link ClassCache} on a pool of background threads, each with its own javassist
+ * {@link ClassPool}, so that a class loader only has to define them. The class loader itself can't do the work in
+ * parallel: javassist's {@link javassist.Loader} isn't parallel capable, so the VM serializes loading through it.
+ * <p/>
+ * A class that fails to instrument here is just left out of the cache, so it gets instrumented again as it's loaded
+ * and any error surfaces there, on the thread that needs the class.
+ */
+public class ParallelInstrumenter {
+    private final AndroidTranslator androidTranslator;
+    private final ClassCache classCache;
+    private final ExecutorService executorService;
+    private final ThreadLocal<ClassPool> classPools;
+    private final ConcurrentHashMap<String, Future<?>> instrumentations = new ConcurrentHashMap<String, Future<?>>();
+    private final ConcurrentHashMap<String, Exception> failures = new ConcurrentHashMap<String, Exception>();
+
+    /**
+     * @param classLoader where to find the classes to instrument, and the classes they refer to
+     */
+    public ParallelInstrumenter(AndroidTranslator androidTranslator, ClassCache classCache, final ClassLoader classLoader, int threadCount) {
+        this.androidTranslator = androidTranslator;
+        this.classCache = classCache;
+        this.executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "robolectric-instrumenter-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.classPools = new ThreadLocal<ClassPool>() {
+            @Override protected ClassPool initialValue() {
+                ClassPool classPool = new ClassPool();
+                classPool.appendClassPath(new LoaderClassPath(classLoader));
+                return classPool;
+            }
+        };
+    }
+
+    /**
+     * Queues the class to be instrumented, unless it's already cached or queued.
+     */
+    public void instrument(final String className, final byte[] originalClassBytes) {
+        FutureTask<Void> instrumentation = new FutureTask<Void>(new Runnable() {
+            @Override public void run() {
+                if (classCache.getClassBytesFor(className, originalClassBytes,
+                        androidTranslator.getInstrumentingListEntriesFor(className)) != null) {
+                    return;
+                }
+                // only release the key this thread was given for the class, not one a loading thread holds
+                try {
+                    androidTranslator.onLoad(classPools.get(), className);
+                } catch (Exception e) {
+                    failures.put(className, e);
+                } finally {
+                    classCache.finishedLoading(className);
+                }
+            }
+        }, null);
+
+        if (instrumentations.putIfAbsent(className, instrumentation) == null) {
+            executorService.execute(instrumentation);
+        }
+    }
+
+    /**
+     * Waits for the class if it's being instrumented in the background, so it doesn't get instrumented twice.
+     */
+    public void awaitInstrumentationOf(String className) {
+        Future<?> instrumentation = instrumentations.get(className);
+        if (instrumentation == null) {
+            return;
+        }
+
+        try {
+            instrumentation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the class will be instrumented as it's loaded instead
+        }
+    }
+
+    /**
+     * Waits for everything queued so far.
+     *
+     * @return the number of classes that failed to instrument
+     */
+    public int finish() throws InterruptedException {
+        executorService.shutdown();
+        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        return failures.size();
+    }
+
+    /**
+     * @return why each class that failed to instrument so far failed, by class name
+     */
+    public Map<String, Exception> getFailures() {
+        return failures;
+    }
+}
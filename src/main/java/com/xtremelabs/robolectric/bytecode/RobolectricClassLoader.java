@@ -1,17 +1,41 @@
 package com.xtremelabs.robolectric.bytecode;
 
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.internal.Implements;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
+import javassist.CtClass;
 import javassist.LoaderClassPath;
 import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.ClassMemberValue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.System;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 public class RobolectricClassLoader extends javassist.Loader {
     private ClassCache classCache;
     private AndroidTranslator androidTranslator;
+    private volatile ParallelInstrumenter parallelInstrumenter;
+    private final ConcurrentHashMap<String, Object> classLoadingLocks = new ConcurrentHashMap<String, Object>();
+    private volatile Object classHandlerData;
+    private ClassPool generatedClassPool;
 
     public RobolectricClassLoader(ClassHandler classHandler) {
         this(classHandler, null);
@@ -22,16 +46,16 @@ public class RobolectricClassLoader extends javassist.Loader {
 
         delegateLoadingOf(AndroidTranslator.class.getName());
         delegateLoadingOf(ClassHandler.class.getName());
+        delegateLoadingOf(ShadowMethodInvoker.class.getName());
 
-        final String classCachePath = System.getProperty("cached.robolectric.classes.path");
-        final File classCacheDirectory;
-        if (null == classCachePath || "".equals(classCachePath.trim())) {
-            classCacheDirectory = new File("./tmp");
-        } else {
-            classCacheDirectory = new File(classCachePath);
+        classCache = createClassCache();
+        if (Boolean.getBoolean("robolectric.logClassCacheStats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override public void run() {
+                    System.out.println(classCache);
+                }
+            });
         }
-
-        classCache = new ClassCache(new File(classCacheDirectory, "cached-robolectric-classes.jar").getAbsolutePath(), AndroidTranslator.CACHE_VERSION);
         try {
             ClassPool classPool = new ClassPool();
             classPool.appendClassPath(new LoaderClassPath(RobolectricClassLoader.class.getClassLoader()));
@@ -45,6 +69,100 @@ public class RobolectricClassLoader extends javassist.Loader {
         }
     }
 
+    static ClassCache createClassCache() {
+        final String classCachePath = System.getProperty("cached.robolectric.classes.path");
+        final File classCacheDirectory;
+        if (null == classCachePath || "".equals(classCachePath.trim())) {
+            classCacheDirectory = new File("./tmp");
+        } else {
+            classCacheDirectory = new File(classCachePath);
+        }
+
+        return new ClassCache(new File(classCacheDirectory, "cached-robolectric-classes").getAbsolutePath(), AndroidTranslator.CACHE_VERSION);
+    }
+
+    /**
+     * Starts instrumenting the classes nearly every test ends up loading, i.e. the ones Robolectric has shadows for and
+     * the views layouts are made of, on background threads. Classes that are still being instrumented when they're
+     * needed are waited for rather than instrumented again.
+     */
+    public void prefetchHotClasses() {
+        if (parallelInstrumenter != null) {
+            return;
+        }
+        parallelInstrumenter = new ParallelInstrumenter(androidTranslator, classCache, getParent(),
+                Runtime.getRuntime().availableProcessors());
+
+        Thread prefetcher = new Thread("robolectric-prefetcher") {
+            @Override public void run() {
+                for (String className : findHotClassNames()) {
+                    byte[] originalClassBytes = readOriginalClassBytes(className);
+                    if (originalClassBytes != null) {
+                        parallelInstrumenter.instrument(className, originalClassBytes);
+                    }
+                }
+            }
+        };
+        prefetcher.setDaemon(true);
+        prefetcher.start();
+    }
+
+    private Set<String> findHotClassNames() {
+        Set<String> hotClassNames = new LinkedHashSet<String>();
+
+        ClassPool classPool = new ClassPool();
+        classPool.appendClassPath(new LoaderClassPath(getParent()));
+        try {
+            for (Object referencedClassName : classPool.get(Robolectric.class.getName()).getRefClasses()) {
+                String implementedClassName = getImplementedClassName(classPool.get((String) referencedClassName));
+                if (implementedClassName != null && androidTranslator.isOnInstrumentingList(implementedClassName)) {
+                    hotClassNames.add(implementedClassName);
+                }
+            }
+        } catch (NotFoundException e) {
+            // just prefetch the views then
+        }
+
+        URL viewClassUrl = getParent().getResource("android/view/View.class");
+        try {
+            URLConnection connection = viewClassUrl == null ? null : viewClassUrl.openConnection();
+            if (connection instanceof JarURLConnection) {
+                JarFile androidJar = ((JarURLConnection) connection).getJarFile();
+                Enumeration<JarEntry> entries = androidJar.entries();
+                while (entries.hasMoreElements()) {
+                    String entryName = entries.nextElement().getName();
+                    if (isViewClass(entryName)) {
+                        hotClassNames.add(entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.'));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // we tried
+        }
+
+        return hotClassNames;
+    }
+
+    private String getImplementedClassName(CtClass ctClass) {
+        AnnotationsAttribute annotations = (AnnotationsAttribute) ctClass.getClassFile2().getAttribute(AnnotationsAttribute.visibleTag);
+        Annotation implementsAnnotation = annotations == null ? null : annotations.getAnnotation(Implements.class.getName());
+        if (implementsAnnotation == null) {
+            return null;
+        }
+        return ((ClassMemberValue) implementsAnnotation.getMemberValue("value")).getValue();
+    }
+
+    /**
+     * ViewLoader looks for the views named in layouts in these packages.
+     */
+    private boolean isViewClass(String entryName) {
+        if (!entryName.endsWith(".class") || entryName.indexOf('$') != -1) {
+            return false;
+        }
+        String packageName = entryName.substring(0, entryName.lastIndexOf('/') + 1);
+        return packageName.equals("android/view/") || packageName.equals("android/widget/") || packageName.equals("android/webkit/");
+    }
+
     public void addCustomShadowClass(String classOrPackageToBeInstrumented) {
         androidTranslator.addCustomShadowClass(classOrPackageToBeInstrumented);
     }
@@ -52,7 +170,8 @@ public class RobolectricClassLoader extends javassist.Loader {
     @Override
     public Class loadClass(String name) throws ClassNotFoundException {
         boolean shouldComeFromThisClassLoader = !(name.startsWith("org.junit") || name.startsWith("org.hamcrest")
-                || name.startsWith("org.specs2") || name.startsWith("scala.")); //org.specs2 and scala. allows for android projects with mixed scala\java tests to be run with Maven Surefire (see the RoboSpecs project on github)
+                || name.startsWith("org.specs2") || name.startsWith("scala.") //org.specs2 and scala. allows for android projects with mixed scala\java tests to be run with Maven Surefire (see the RoboSpecs project on github)
+                || name.startsWith("org.sqlite.")); // its native library can only be loaded by one class loader; the rest fall back to pure-java mode
 
         Class<?> theClass;
         if (shouldComeFromThisClassLoader) {
@@ -64,6 +183,24 @@ public class RobolectricClassLoader extends javassist.Loader {
         return theClass;
     }
 
+    /**
+     * Loads each class name under its own lock, so two threads loading the same class can't both define it. This is
+     * what a parallel capable loader would do, but {@link javassist.Loader} isn't registered as one, and a subclass
+     * can't register unless its superclass has (nor can it on Java 6).
+     */
+    @Override
+    protected Class loadClass(String name, boolean resolve) throws ClassFormatError, ClassNotFoundException {
+        synchronized (getClassLoadingLockFor(name)) {
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    private Object getClassLoadingLockFor(String name) {
+        Object lock = new Object();
+        Object existingLock = classLoadingLocks.putIfAbsent(name, lock);
+        return existingLock == null ? lock : existingLock;
+    }
+
     public Class<?> bootstrap(Class testClass) {
         String testClassName = testClass.getName();
 
@@ -74,12 +211,86 @@ public class RobolectricClassLoader extends javassist.Loader {
         }
     }
 
+    /**
+     * Defines a class generated at runtime (e.g. by {@link ShadowMethodInvokerGenerator}) in this class loader, so it
+     * shares a runtime package with the classes it calls.
+     */
+    public Class<?> defineGeneratedClass(String name, byte[] classBytes) {
+        synchronized (getClassLoadingLockFor(name)) {
+            Class<?> generatedClass = findLoadedClass(name);
+            if (generatedClass != null) {
+                return generatedClass;
+            }
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+    }
+
+    /**
+     * Whatever the {@link ClassHandler} keeps about this loader's classes, kept here so it goes away with the loader.
+     */
+    public Object getClassHandlerData() {
+        return classHandlerData;
+    }
+
+    public void setClassHandlerData(Object classHandlerData) {
+        this.classHandlerData = classHandlerData;
+    }
+
+    /**
+     * @return the pool {@link ShadowMethodInvokerGenerator} compiles this loader's generated classes against; it's
+     *         kept here rather than by the generator so it goes away with the loader
+     */
+    public synchronized ClassPool getGeneratedClassPool() {
+        if (generatedClassPool == null) {
+            generatedClassPool = new ClassPool();
+            generatedClassPool.appendClassPath(new LoaderClassPath(this));
+        }
+        return generatedClassPool;
+    }
+
     @Override
     protected Class findClass(String name) throws ClassNotFoundException {
-        byte[] classBytes = classCache.getClassBytesFor(name);
+        byte[] originalClassBytes = readOriginalClassBytes(name);
+        if (originalClassBytes == null) {
+            return super.findClass(name);
+        }
+
+        String instrumentingListEntries = androidTranslator.getInstrumentingListEntriesFor(name);
+        ByteBuffer classBytes = classCache.getClassBytesFor(name, originalClassBytes, instrumentingListEntries);
+        if (classBytes == null && parallelInstrumenter != null) {
+            parallelInstrumenter.awaitInstrumentationOf(name);
+            classBytes = classCache.getClassBytesFor(name, originalClassBytes, instrumentingListEntries);
+        }
         if (classBytes != null) {
-            return defineClass(name, classBytes, 0, classBytes.length);
+            return defineClass(name, classBytes, (ProtectionDomain) null);
+        }
+        try {
+            return super.findClass(name);
+        } finally {
+            classCache.finishedLoading(name);
+        }
+    }
+
+    private byte[] readOriginalClassBytes(String name) {
+        InputStream inputStream = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+        if (inputStream == null) {
+            return null;
+        }
+
+        try {
+            try {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream(inputStream.available());
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+                return outputStream.toByteArray();
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
         }
-        return super.findClass(name);
     }
 }
@@ -14,6 +14,8 @@ public class RobolectricInternals {
     // initialized via magic by AndroidTranslator
     private static ClassHandler classHandler;
     private static Set<String> unloadableClassNames = new HashSet<String>();
+    // passed by instrumented methods that take no arguments, instead of a new array per call
+    public static final Object[] NO_ARGS = new Object[0];
 
     private static final ThreadLocal<Vars> ALL_VARS = new ThreadLocal<Vars>() {
         @Override protected Vars initialValue() {
@@ -139,9 +141,19 @@ public class RobolectricInternals {
     }
     
     @SuppressWarnings({"UnusedDeclaration"})
-    public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable {
+    public static int registerCallSite(Class clazz, String callSiteField, String methodName, String[] paramTypes) {
+        return classHandler.registerCallSite(clazz, callSiteField, methodName, paramTypes);
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static boolean hasShadowImplementation(int callSiteId) {
+        return classHandler.hasShadowImplementation(callSiteId);
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(int callSiteId, Object instance, Object[] params) throws Throwable {
         try {
-          return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, params);
+          return classHandler.methodInvoked(callSiteId, instance, params);
         } catch(java.lang.LinkageError e) {
           throw new Exception(e);
         }
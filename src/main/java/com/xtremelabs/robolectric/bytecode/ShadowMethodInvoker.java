@@ -0,0 +1,15 @@
+package com.xtremelabs.robolectric.bytecode;
+
+/**
+ * Calls a single shadow method directly, without going through {@link java.lang.reflect.Method#invoke}.
+ * Implementations are generated at runtime by {@link ShadowMethodInvokerGenerator}.
+ */
+public interface ShadowMethodInvoker {
+    /**
+     * @param shadow the shadow instance, or null for static shadow methods
+     * @param params the (boxed) arguments to the shadow method
+     * @return the (boxed) return value, or null for void methods
+     * @throws Throwable whatever the shadow method throws, unwrapped
+     */
+    Object invoke(Object shadow, Object[] params) throws Throwable;
+}
@@ -0,0 +1,139 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Generates a small {@link ShadowMethodInvoker} class per shadow method, which calls the shadow method with a
+ * direct, typed call. The invoker is defined in the {@link RobolectricClassLoader} and package of the shadow class, so
+ * it can call package-private shadow methods as well.
+ */
+public class ShadowMethodInvokerGenerator {
+    public static final String INVOKER_CLASS_NAME_MARKER = "$$ShadowMethodInvoker";
+
+    private int invokerCount = 0;
+
+    /**
+     * @return an invoker for {@code method}, or null if it can't be called directly from generated code (in which case
+     *         the caller should fall back to reflection)
+     * @throws CannotCompileException if the invoker doesn't compile
+     * @throws NotFoundException      if javassist can't find one of the classes the invoker uses
+     */
+    public synchronized ShadowMethodInvoker generate(Method method) throws CannotCompileException, NotFoundException {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (!(declaringClass.getClassLoader() instanceof RobolectricClassLoader) || !canCallDirectly(method)) {
+            return null;
+        }
+        RobolectricClassLoader classLoader = (RobolectricClassLoader) declaringClass.getClassLoader();
+
+        ClassPool classPool = classLoader.getGeneratedClassPool();
+        CtClass invokerCtClass = classPool.makeClass(declaringClass.getName() + INVOKER_CLASS_NAME_MARKER + invokerCount++);
+        invokerCtClass.addInterface(classPool.get(ShadowMethodInvoker.class.getName()));
+        invokerCtClass.addMethod(CtNewMethod.make(generateInvokeMethod(method), invokerCtClass));
+
+        byte[] classBytes;
+        try {
+            classBytes = invokerCtClass.toBytecode();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            invokerCtClass.detach();
+        }
+
+        Class<?> invokerClass = classLoader.defineGeneratedClass(invokerCtClass.getName(), classBytes);
+        try {
+            return (ShadowMethodInvoker) invokerClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    String generateInvokeMethod(Method method) {
+        /*
+            INVOKE METHOD TEMPLATE:
+
+            public Object invoke(Object shadow, Object[] params) throws Throwable {
+                return ($w) ((<declaringClass>) shadow).<methodName>(((<paramClass>) params[0])<unboxing>, ...);
+            }
+
+        */
+
+        Class<?> returnType = method.getReturnType();
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        StringBuilder buf = new StringBuilder();
+        buf.append("public Object invoke(Object shadow, Object[] params) throws Throwable {\n");
+        if (returnType != Void.TYPE) {
+            buf.append("return ($w) ");
+        }
+        if (isStatic) {
+            buf.append(method.getDeclaringClass().getName());
+        } else {
+            buf.append("((").append(method.getDeclaringClass().getName()).append(") $1)");
+        }
+        buf.append(".").append(method.getName()).append("(");
+
+        Class<?>[] paramTypes = method.getParameterTypes();
+        for (int i = 0; i < paramTypes.length; i++) {
+            if (i > 0) buf.append(", ");
+            Type type = Type.find(paramTypes[i]);
+            buf.append("((").append(type.nonPrimitiveClassName(paramTypes[i])).append(") $2[").append(i).append("])");
+            buf.append(type.unboxString());
+        }
+        buf.append(");\n");
+
+        if (returnType == Void.TYPE) {
+            buf.append("return null;\n");
+        }
+        buf.append("}\n");
+        return buf.toString();
+    }
+
+    private boolean canCallDirectly(Method method) {
+        if (Modifier.isPrivate(method.getModifiers())) {
+            return false;
+        }
+
+        Class<?> declaringClass = method.getDeclaringClass();
+        String packageName = packageNameOf(declaringClass);
+        if (!isAccessibleFrom(declaringClass, packageName) || !isAccessibleFrom(method.getReturnType(), packageName)) {
+            return false;
+        }
+        for (Class<?> paramType : method.getParameterTypes()) {
+            if (!isAccessibleFrom(paramType, packageName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessibleFrom(Class<?> type, String packageName) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> clazz = type; clazz != null; clazz = clazz.getDeclaringClass()) {
+            if (!Modifier.isPublic(clazz.getModifiers()) && !packageNameOf(clazz).equals(packageName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String packageNameOf(Class<?> clazz) {
+        String name = clazz.getName();
+        int lastDot = name.lastIndexOf('.');
+        return lastDot == -1 ? "" : name.substring(0, lastDot);
+    }
+}
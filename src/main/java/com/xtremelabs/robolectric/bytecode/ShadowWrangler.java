@@ -10,6 +10,7 @@ import javassist.CtField;
 import javassist.NotFoundException;
 
 import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -18,9 +19,12 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ShadowWrangler implements ClassHandler {
     public static final String SHADOW_FIELD_NAME = "__shadow__";
@@ -30,11 +34,27 @@ public class ShadowWrangler implements ClassHandler {
     public boolean debug = false;
     private boolean strictI18n = false;
     
-    private final Map<Class, MetaShadow> metaShadowMap = new HashMap<Class, MetaShadow>();
-    private Map<String, String> shadowClassMap = new HashMap<String, String>();
-    private Map<Class, Field> shadowFieldMap = new HashMap<Class, Field>();
+    private static final String NO_SHADOW_CLASS = "";
+
+    private final Object lock = new Object();
+    // for classes that weren't loaded by a RobolectricClassLoader, which keeps its own
+    private final LoaderData defaultLoaderData = new LoaderData();
+    // changed under the lock, and published to everything else as a ShadowBindings
+    private final Map<String, String> shadowClassMap = new HashMap<String, String>();
+    private volatile ShadowBindings shadowBindings = new ShadowBindings(new HashMap<String, String>());
+    private volatile boolean shadowClassMapChanged = false;
     private boolean logMissingShadowMethods = false;
 
+    // by id, grown under the lock; only weakly, since the LoaderData of a call site's class keeps it, so a class loader
+    // nothing uses anymore can be collected along with its call sites
+    private volatile WeakReference<CallSite>[] callSites = newCallSiteArray(1024);
+    private int callSiteCount;
+    private final List<Integer> shadowFreeCallSites = new ArrayList<Integer>();
+    private Map<String, String> shadowFreeCallSitesShadowClassMap;
+
+    private boolean useGeneratedInvokers = !"reflection".equals(System.getProperty("robolectric.shadowInvoker"));
+    private final ShadowMethodInvokerGenerator invokerGenerator = new ShadowMethodInvokerGenerator();
+
     // sorry! it really only makes sense to have one per ClassLoader anyway though [xw/hu]
     public static ShadowWrangler getInstance() {
         if (singleton == null) {
@@ -71,7 +91,10 @@ public class ShadowWrangler implements ClassHandler {
 
     @Override
     public void beforeTest() {
-        shadowClassMap.clear();
+        synchronized (lock) {
+            shadowClassMap.clear();
+            shadowClassMapChanged = true;
+        }
     }
 
     @Override
@@ -79,32 +102,246 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     public void bindShadowClass(Class<?> realClass, Class<?> shadowClass) {
-        shadowClassMap.put(realClass.getName(), shadowClass.getName());
+        synchronized (lock) {
+            shadowClassMap.put(realClass.getName(), shadowClass.getName());
+            shadowClassMapChanged = true;
+            if (shadowFreeCallSitesShadowClassMap != null
+                    && !shadowClass.getName().equals(shadowFreeCallSitesShadowClassMap.get(realClass.getName()))) {
+                resetShadowFreeCallSites();
+            }
+        }
         if (debug) System.out.println("shadow " + realClass + " with " + shadowClass);
     }
 
     @Override
-    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable {
-        InvocationPlan invocationPlan = new InvocationPlan(clazz, methodName, instance, paramTypes);
-        if (!invocationPlan.prepare()) {
-            reportNoShadowMethodFound(clazz, methodName, paramTypes);
+    public int registerCallSite(Class clazz, String callSiteField, String methodName, String[] paramTypes) {
+        Field field = getCallSiteField(clazz, callSiteField);
+        synchronized (lock) {
+            // another thread may have registered it since the instrumented method looked
+            int registeredCallSiteId = field == null ? 0 : readCallSiteField(field);
+            if (registeredCallSiteId != 0) {
+                return Math.abs(registeredCallSiteId);
+            }
+
+            int callSiteId = ++callSiteCount;
+            if (callSiteId >= callSites.length) {
+                callSites = Arrays.copyOf(callSites, callSites.length * 2);
+            }
+            CallSite callSite = new CallSite(new InvocationKey(clazz, methodName, paramTypes), field);
+            getLoaderData(clazz).callSites.add(callSite);
+            callSites[callSiteId] = new WeakReference<CallSite>(callSite);
+            if (field != null) {
+                writeCallSiteField(field, callSiteId);
+            }
+            return callSiteId;
+        }
+    }
+
+    @Override
+    public boolean hasShadowImplementation(int callSiteId) {
+        InvocationPlan invocationPlan = getInvocationPlan(callSiteId);
+        if (invocationPlan.getDeclaredShadowClass() == null) {
+            reportNoShadowMethodFound(invocationPlan.invocationKey);
+            if (!logMissingShadowMethods) {
+                markShadowFree(callSiteId);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Object methodInvoked(int callSiteId, Object instance, Object[] params) throws Throwable {
+        InvocationPlan invocationPlan = getInvocationPlan(callSiteId);
+        InvocationKey invocationKey = invocationPlan.invocationKey;
+        if (invocationPlan.getDeclaredShadowClass() == null) {
+            reportNoShadowMethodFound(invocationKey);
             return null;
         }
-        
-        if (strictI18n && !invocationPlan.isI18nSafe()) {
-        	throw new I18nException("Method " + methodName + " on class " + clazz.getName() + " is not i18n-safe.");
+
+        Object shadow = instance == null ? null : shadowFor(instance);
+        ShadowMethod shadowMethod = invocationPlan.getShadowMethod(shadow);
+        if (shadowMethod == null) {
+            reportNoShadowMethodFound(invocationKey);
+            return null;
+        }
+
+        if ((instance == null) != shadowMethod.isStatic) {
+            throw new RuntimeException("method staticness of " + invocationKey.clazz.getName() + "." + invocationKey.methodName + " and " + invocationPlan.getDeclaredShadowClass().getName() + "." + shadowMethod.method.getName() + " don't match");
+        }
+
+        if (strictI18n && !shadowMethod.i18nSafe) {
+        	throw new I18nException("Method " + invocationKey.methodName + " on class " + invocationKey.clazz.getName() + " is not i18n-safe.");
+        }
+
+        ShadowMethodInvoker invoker = useGeneratedInvokers ? shadowMethod.getInvoker(invokerGenerator) : null;
+        if (invoker != null) {
+            try {
+                return invoker.invoke(shadow, params);
+            } catch (ClassCastException e) {
+                if (isThrownByInvoker(e)) {
+                    // what reflection reports as an IllegalArgumentException
+                    throw new RuntimeException(shadow.getClass().getName() + " is not assignable from " +
+                            invocationPlan.getDeclaredShadowClass().getName(), e);
+                }
+                throw stripStackTrace(e);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
         }
 
         try {
-            return invocationPlan.getMethod().invoke(invocationPlan.getShadow(), params);
+            return shadowMethod.method.invoke(shadow, params);
         } catch (IllegalArgumentException e) {
-            throw new RuntimeException(invocationPlan.getShadow().getClass().getName() + " is not assignable from " +
+            throw new RuntimeException(shadow.getClass().getName() + " is not assignable from " +
                     invocationPlan.getDeclaredShadowClass().getName(), e);
         } catch (InvocationTargetException e) {
             throw stripStackTrace(e.getCause());
         }
     }
 
+    /**
+     * Resolving a shadow method reflectively is expensive, so the result is cached per call site, along with the
+     * bindings it was resolved with. Those are only replaced when the shadow bindings actually differ from them, which
+     * usually isn't the case from one test to the next.
+     */
+    private InvocationPlan getInvocationPlan(int callSiteId) {
+        ShadowBindings bindings = getShadowBindings();
+        CallSite callSite = getCallSite(callSiteId);
+
+        InvocationPlan invocationPlan = callSite.invocationPlan;
+        if (invocationPlan == null || invocationPlan.bindings != bindings) {
+            // resolving may load (and instrument) other classes, so don't hold any locks while doing it
+            invocationPlan = new InvocationPlan(callSite.invocationKey, bindings);
+            callSite.invocationPlan = invocationPlan;
+        }
+        return invocationPlan;
+    }
+
+    /**
+     * @return the call site, which is still there, since the class it's in is calling us
+     */
+    private CallSite getCallSite(int callSiteId) {
+        WeakReference<CallSite>[] callSites = this.callSites;
+        WeakReference<CallSite> callSite = callSiteId < callSites.length ? callSites[callSiteId] : null;
+        if (callSite == null) {
+            // registered on another thread, which published the id through the class's field rather than the lock
+            synchronized (lock) {
+                callSite = this.callSites[callSiteId];
+            }
+        }
+        return callSite.get();
+    }
+
+    /**
+     * @return the call sites and lookups of the class's loader, which a RobolectricClassLoader keeps itself, so they
+     *         don't keep it alive after its last test
+     */
+    private LoaderData getLoaderData(Class<?> clazz) {
+        ClassLoader classLoader = clazz.getClassLoader();
+        if (!(classLoader instanceof RobolectricClassLoader)) {
+            return defaultLoaderData;
+        }
+
+        RobolectricClassLoader robolectricClassLoader = (RobolectricClassLoader) classLoader;
+        Object loaderData = robolectricClassLoader.getClassHandlerData();
+        if (loaderData == null) {
+            synchronized (lock) {
+                loaderData = robolectricClassLoader.getClassHandlerData();
+                if (loaderData == null) {
+                    loaderData = new LoaderData();
+                    robolectricClassLoader.setClassHandlerData(loaderData);
+                }
+            }
+        }
+        return loaderData instanceof LoaderData ? (LoaderData) loaderData : defaultLoaderData;
+    }
+
+    /**
+     * @return the current bindings; whatever is worked out from them can be cached in them, since they never change
+     */
+    private ShadowBindings getShadowBindings() {
+        if (shadowClassMapChanged) {
+            synchronized (lock) {
+                if (shadowClassMapChanged) {
+                    shadowClassMapChanged = false;
+                    if (!shadowClassMap.equals(shadowBindings.shadowClassMap)) {
+                        shadowBindings = new ShadowBindings(new HashMap<String, String>(shadowClassMap));
+                    }
+                }
+            }
+        }
+        return shadowBindings;
+    }
+
+    private Field getCallSiteField(Class clazz, String callSiteField) {
+        try {
+            Field field = clazz.getDeclaredField(callSiteField);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Most instrumented methods belong to classes nothing is shadowing, like the many android.text and android.util
+     * helpers. Once we know that, the call site's field is set to its negated id so the instrumented method stops
+     * calling us. Dropping a binding can't give such a method a shadow, so the fields only need to be put back when a
+     * binding shows up that wasn't there when they were set.
+     */
+    private void markShadowFree(int callSiteId) {
+        CallSite callSite = getCallSite(callSiteId);
+        synchronized (lock) {
+            Field field = callSite.field;
+            if (field == null) {
+                return;
+            }
+
+            if (shadowFreeCallSitesShadowClassMap == null) {
+                shadowFreeCallSitesShadowClassMap = new HashMap<String, String>(shadowClassMap);
+            } else {
+                shadowFreeCallSitesShadowClassMap.entrySet().retainAll(shadowClassMap.entrySet());
+            }
+
+            writeCallSiteField(field, -callSiteId);
+            shadowFreeCallSites.add(callSiteId);
+        }
+    }
+
+    private void resetShadowFreeCallSites() {
+        for (Integer callSiteId : shadowFreeCallSites) {
+            CallSite callSite = callSites[callSiteId].get();
+            // unless its class loader is gone
+            if (callSite != null) {
+                writeCallSiteField(callSite.field, callSiteId);
+            }
+        }
+        shadowFreeCallSites.clear();
+        shadowFreeCallSitesShadowClassMap = null;
+    }
+
+    private int readCallSiteField(Field field) {
+        try {
+            return field.getInt(null);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeCallSiteField(Field field, int value) {
+        try {
+            field.setInt(null, value);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isThrownByInvoker(Throwable throwable) {
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        return stackTrace.length > 0 && stackTrace[0].getClassName().contains(ShadowMethodInvokerGenerator.INVOKER_CLASS_NAME_MARKER);
+    }
+
     private <T extends Throwable> T stripStackTrace(T throwable) {
         List<StackTraceElement> stackTrace = new ArrayList<StackTraceElement>();
         for (StackTraceElement stackTraceElement : throwable.getStackTrace()) {
@@ -112,6 +349,7 @@ public class ShadowWrangler implements ClassHandler {
             boolean isInternalCall = className.startsWith("sun.reflect.")
                     || className.startsWith("java.lang.reflect.")
                     || className.equals(ShadowWrangler.class.getName())
+                    || className.contains(ShadowMethodInvokerGenerator.INVOKER_CLASS_NAME_MARKER)
                     || className.equals(RobolectricInternals.class.getName());
             if (!isInternalCall) {
                 stackTrace.add(stackTraceElement);
@@ -121,10 +359,10 @@ public class ShadowWrangler implements ClassHandler {
         return throwable;
     }
 
-    private void reportNoShadowMethodFound(Class clazz, String methodName, String[] paramTypes) {
+    private void reportNoShadowMethodFound(InvocationKey invocationKey) {
         if (logMissingShadowMethods) {
-            System.out.println("No Shadow method found for " + clazz.getSimpleName() + "." + methodName + "(" +
-                    Join.join(", ", (Object[]) paramTypes) + ")");
+            System.out.println("No Shadow method found for " + invocationKey.clazz.getSimpleName() + "." + invocationKey.methodName + "(" +
+                    Join.join(", ", (Object[]) invocationKey.paramTypes) + ")");
         }
     }
 
@@ -162,7 +400,7 @@ public class ShadowWrangler implements ClassHandler {
             return shadow;
         }
 
-        String shadowClassName = getShadowClassName(instance.getClass());
+        String shadowClassName = getShadowClassName(instance.getClass(), getShadowBindings());
 
         if (debug)
             System.out.println("creating new " + shadowClassName + " as shadow for " + instance.getClass().getName());
@@ -196,23 +434,37 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     private MetaShadow getMetaShadow(Class<?> shadowClass) {
-        synchronized (metaShadowMap) {
-            MetaShadow metaShadow = metaShadowMap.get(shadowClass);
-            if (metaShadow == null) {
-                metaShadow = new MetaShadow(shadowClass);
-                metaShadowMap.put(shadowClass, metaShadow);
+        ConcurrentHashMap<Class, MetaShadow> metaShadowMap = getLoaderData(shadowClass).metaShadowMap;
+        MetaShadow metaShadow = metaShadowMap.get(shadowClass);
+        if (metaShadow == null) {
+            metaShadow = new MetaShadow(shadowClass);
+            MetaShadow existingMetaShadow = metaShadowMap.putIfAbsent(shadowClass, metaShadow);
+            if (existingMetaShadow != null) {
+                metaShadow = existingMetaShadow;
             }
-            return metaShadow;
         }
+        return metaShadow;
     }
 
-    private String getShadowClassName(Class clazz) {
-        String shadowClassName = null;
-        while (shadowClassName == null && clazz != null) {
-            shadowClassName = shadowClassMap.get(clazz.getName());
-            clazz = clazz.getSuperclass();
+    /**
+     * Walking up the superclasses for a bound shadow happens every time a shadow is created, so the result is cached
+     * per class in the bindings, like the invocation plans. Everything here can be read without locking, so shadows can
+     * be created from background threads too.
+     */
+    private String getShadowClassName(Class clazz, ShadowBindings bindings) {
+        String shadowClassName = bindings.effectiveShadowClassNames.get(clazz.getName());
+        if (shadowClassName == null) {
+            shadowClassName = NO_SHADOW_CLASS;
+            for (Class<?> superclass = clazz; superclass != null; superclass = superclass.getSuperclass()) {
+                String boundShadowClassName = bindings.shadowClassMap.get(superclass.getName());
+                if (boundShadowClassName != null) {
+                    shadowClassName = boundShadowClassName;
+                    break;
+                }
+            }
+            bindings.effectiveShadowClassNames.put(clazz.getName(), shadowClassName);
         }
-        return shadowClassName;
+        return shadowClassName.equals(NO_SHADOW_CLASS) ? null : shadowClassName;
     }
 
     private Constructor<?> findConstructor(Object instance, Class<?> shadowClass) {
@@ -231,6 +483,7 @@ public class ShadowWrangler implements ClassHandler {
 
     private Field getShadowField(Object instance) {
         Class clazz = instance.getClass();
+        ConcurrentHashMap<Class, Field> shadowFieldMap = getLoaderData(clazz).shadowFieldMap;
         Field field = shadowFieldMap.get(clazz);
         if (field == null) {
             try {
@@ -238,7 +491,7 @@ public class ShadowWrangler implements ClassHandler {
             } catch (NoSuchFieldException e) {
                 throw new RuntimeException(instance.getClass().getName() + " has no shadow field", e);
             }
-            shadowFieldMap.put(clazz, field);
+            shadowFieldMap.putIfAbsent(clazz, field);
         }
         return field;
     }
@@ -269,43 +522,120 @@ public class ShadowWrangler implements ClassHandler {
 
     public void logMissingInvokedShadowMethods() {
         logMissingShadowMethods = true;
+        synchronized (lock) {
+            resetShadowFreeCallSites();
+        }
     }
 
     public void silence() {
         logMissingShadowMethods = false;
     }
 
-    private class InvocationPlan {
-        private Class clazz;
-        private ClassLoader classLoader;
-        private String methodName;
-        private Object instance;
-        private String[] paramTypes;
-        private Class<?> declaredShadowClass;
-        private Method method;
-        private Object shadow;
-
-        public InvocationPlan(Class clazz, String methodName, Object instance, String... paramTypes) {
+    /**
+     * By default, frequently called shadow methods are invoked through generated {@link ShadowMethodInvoker}s rather
+     * than reflection. Pass false here (or set the system property "robolectric.shadowInvoker" to "reflection") to
+     * always use reflection.
+     */
+    public void setUseGeneratedInvokers(boolean useGeneratedInvokers) {
+        this.useGeneratedInvokers = useGeneratedInvokers;
+    }
+
+    /**
+     * The real class to shadow class name bindings at some point, which never change, along with what's been worked
+     * out from them. Binding shadows publishes new ones, so nothing worked out from old bindings can leak into them.
+     */
+    private class ShadowBindings {
+        private final Map<String, String> shadowClassMap;
+        // by class name rather than class, since the bindings outlive the class loaders
+        private final ConcurrentHashMap<String, String> effectiveShadowClassNames = new ConcurrentHashMap<String, String>();
+
+        ShadowBindings(Map<String, String> shadowClassMap) {
+            this.shadowClassMap = Collections.unmodifiableMap(shadowClassMap);
+        }
+    }
+
+    /**
+     * What's been worked out about the classes of one class loader.
+     */
+    private static class LoaderData {
+        // added to under the lock; only here to keep them alive for as long as the loader is
+        private final List<CallSite> callSites = new ArrayList<CallSite>();
+        private final ConcurrentHashMap<Class, Field> shadowFieldMap = new ConcurrentHashMap<Class, Field>();
+        private final ConcurrentHashMap<Class, MetaShadow> metaShadowMap = new ConcurrentHashMap<Class, MetaShadow>();
+    }
+
+    private static class CallSite {
+        private final InvocationKey invocationKey;
+        private final Field field;
+        private volatile InvocationPlan invocationPlan;
+
+        CallSite(InvocationKey invocationKey, Field field) {
+            this.invocationKey = invocationKey;
+            this.field = field;
+        }
+    }
+
+    private static class InvocationKey {
+        private final Class clazz;
+        private final String methodName;
+        private final String[] paramTypes;
+
+        InvocationKey(Class clazz, String methodName, String[] paramTypes) {
             this.clazz = clazz;
-            this.classLoader = clazz.getClassLoader();
             this.methodName = methodName;
-            this.instance = instance;
             this.paramTypes = paramTypes;
         }
+    }
 
-        public Class<?> getDeclaredShadowClass() {
-            return declaredShadowClass;
+    private static class ShadowMethod {
+        private static final ShadowMethod NONE = new ShadowMethod();
+
+        /** Rarely called shadow methods aren't worth compiling an invoker for. */
+        private static final int INVOKER_GENERATION_THRESHOLD = 50;
+
+        final Method method;
+        final boolean isStatic;
+        final boolean i18nSafe;
+
+        // shadow methods may be called from any thread
+        private final AtomicInteger invocationCount = new AtomicInteger();
+        private volatile boolean invokerUnavailable;
+        private volatile ShadowMethodInvoker invoker;
+
+        private ShadowMethod() {
+            this.method = null;
+            this.isStatic = false;
+            this.i18nSafe = true;
         }
 
-        public Method getMethod() {
-            return method;
+        ShadowMethod(Method method) {
+            this.method = method;
+            this.isStatic = Modifier.isStatic(method.getModifiers());
+            this.i18nSafe = isI18nSafe(method);
+            method.setAccessible(true);
         }
 
-        public Object getShadow() {
-            return shadow;
+        ShadowMethodInvoker getInvoker(ShadowMethodInvokerGenerator invokerGenerator) {
+            if (invoker == null && !invokerUnavailable && invocationCount.incrementAndGet() > INVOKER_GENERATION_THRESHOLD) {
+                try {
+                    invoker = invokerGenerator.generate(method);
+                } catch (CannotCompileException e) {
+                    invokerFailed(e);
+                } catch (NotFoundException e) {
+                    invokerFailed(e);
+                }
+                // the method is called reflectively from now on, this call included
+                invokerUnavailable = invoker == null;
+            }
+            return invoker;
         }
-        
-        public boolean isI18nSafe() {
+
+        private void invokerFailed(Exception e) {
+            // only happens once per method, since it isn't generated again
+            System.out.println("Warning: couldn't generate an invoker for " + method + ", calling it reflectively: " + e);
+        }
+
+        private static boolean isI18nSafe(Method method) {
         	// method is loaded by another class loader. So do everything reflectively.
         	Annotation[] annos = method.getAnnotations();
         	for (int i = 0; i < annos.length; i++) {
@@ -322,43 +652,60 @@ public class ShadowWrangler implements ClassHandler {
         	
         	return true;	
         }
+    }
 
-        public boolean prepare() {
-            Class<?>[] paramClasses = getParamClasses();
+    private class InvocationPlan {
+        private final InvocationKey invocationKey;
+        private final Class clazz;
+        private final ClassLoader classLoader;
+        private final String methodName;
+        private final Class<?>[] paramClasses;
+        private final Class<?> declaredShadowClass;
+        private final Class<?> staticShadowClass;
+        private final Map<Class<?>, ShadowMethod> shadowMethods = new ConcurrentHashMap<Class<?>, ShadowMethod>();
+        private final ShadowBindings bindings;
+
+        public InvocationPlan(InvocationKey invocationKey, ShadowBindings bindings) {
+            this.invocationKey = invocationKey;
+            this.bindings = bindings;
+            this.clazz = invocationKey.clazz;
+            this.classLoader = clazz.getClassLoader();
+            this.paramClasses = getParamClasses(invocationKey.paramTypes);
 
-            Class<?> originalClass = loadClass(clazz.getName(), classLoader);
+            declaredShadowClass = findDeclaredShadowClassForMethod(clazz, invocationKey.methodName, paramClasses);
+            staticShadowClass = declaredShadowClass == null ? null : findShadowClass(clazz);
 
-            declaredShadowClass = findDeclaredShadowClassForMethod(originalClass, methodName, paramClasses);
-            if (declaredShadowClass == null) {
-                return false;
-            }
+            methodName = invocationKey.methodName.equals("<init>") ? "__constructor__" : invocationKey.methodName;
+        }
 
-            if (methodName.equals("<init>")) {
-                methodName = "__constructor__";
-            }
+        public Class<?> getDeclaredShadowClass() {
+            return declaredShadowClass;
+        }
 
-            if (instance != null) {
-                shadow = shadowFor(instance);
-                method = getMethod(shadow.getClass(), methodName, paramClasses);
-            } else {
-                shadow = null;
-                method = getMethod(findShadowClass(clazz), methodName, paramClasses);
+        /**
+         * Returns the shadow method to invoke on {@code shadow} (or the static shadow method if {@code shadow} is
+         * null), or null if the shadow class doesn't implement this method.
+         */
+        public ShadowMethod getShadowMethod(Object shadow) {
+            Class<?> shadowClass = shadow != null ? shadow.getClass() : staticShadowClass;
+            if (shadowClass == null) {
+                return null;
             }
 
-            if (method == null) {
-                if (debug) {
-                    System.out.println("No method found for " + clazz + "." + methodName + "(" + Arrays.asList(paramClasses) + ") on " + declaredShadowClass.getName());
+            ShadowMethod shadowMethod = shadowMethods.get(shadowClass);
+            if (shadowMethod == null) {
+                Method method = getMethod(shadowClass, methodName, paramClasses);
+                if (method == null) {
+                    if (debug) {
+                        System.out.println("No method found for " + clazz + "." + methodName + "(" + Arrays.asList(paramClasses) + ") on " + declaredShadowClass.getName());
+                    }
+                    shadowMethod = ShadowMethod.NONE;
+                } else {
+                    shadowMethod = new ShadowMethod(method);
                 }
-                return false;
+                shadowMethods.put(shadowClass, shadowMethod);
             }
-
-            if ((instance == null) != Modifier.isStatic(method.getModifiers())) {
-                throw new RuntimeException("method staticness of " + clazz.getName() + "." + methodName + " and " + declaredShadowClass.getName() + "." + method.getName() + " don't match");
-            }
-
-            method.setAccessible(true);
-
-            return true;
+            return shadowMethod == ShadowMethod.NONE ? null : shadowMethod;
         }
 
         private Class<?> findDeclaredShadowClassForMethod(Class<?> originalClass, String methodName, Class<?>[] paramClasses) {
@@ -367,7 +714,7 @@ public class ShadowWrangler implements ClassHandler {
         }
 
         private Class<?> findShadowClass(Class<?> originalClass) {
-            String declaredShadowClassName = getShadowClassName(originalClass);
+            String declaredShadowClassName = getShadowClassName(originalClass, bindings);
             if (declaredShadowClassName == null) {
                 return null;
             }
@@ -376,7 +723,7 @@ public class ShadowWrangler implements ClassHandler {
 
         private Class<?> findDeclaringClassForMethod(String methodName, Class<?>[] paramClasses, Class<?> originalClass) {
             Class<?> declaringClass;
-            if (this.methodName.equals("<init>")) {
+            if (methodName.equals("<init>")) {
                 declaringClass = originalClass;
             } else {
                 Method originalMethod;
@@ -390,7 +737,7 @@ public class ShadowWrangler implements ClassHandler {
             return declaringClass;
         }
 
-        private Class<?>[] getParamClasses() {
+        private Class<?>[] getParamClasses(String[] paramTypes) {
             Class<?>[] paramClasses = new Class<?>[paramTypes.length];
 
             for (int i = 0; i < paramTypes.length; i++) {
@@ -432,12 +779,17 @@ public class ShadowWrangler implements ClassHandler {
 
         @Override
         public String toString() {
-            return "delegating to " + declaredShadowClass.getName() + "." + method.getName()
-                    + "(" + Arrays.toString(method.getParameterTypes()) + ")";
+            return "delegating " + clazz.getName() + "." + methodName + "(" + Arrays.toString(paramClasses) + ") to "
+                    + (declaredShadowClass == null ? "nothing" : declaredShadowClass.getName());
         }
     }
 
-    private class MetaShadow {
+    @SuppressWarnings("unchecked")
+    private static WeakReference<CallSite>[] newCallSiteArray(int length) {
+        return new WeakReference[length];
+    }
+
+    private static class MetaShadow {
         List<Field> realObjectFields = new ArrayList<Field>();
 
         public MetaShadow(Class<?> shadowClass) {
@@ -44,6 +44,18 @@ enum Type {
         return nonPrimitiveClassName == null ? returnCtClass.getName() : nonPrimitiveClassName;
     }
 
+    String nonPrimitiveClassName(Class<?> clazz) {
+        if (nonPrimitiveClassName != null) {
+            return nonPrimitiveClassName;
+        }
+        String arraySuffix = "";
+        while (clazz.isArray()) {
+            arraySuffix += "[]";
+            clazz = clazz.getComponentType();
+        }
+        return clazz.getName() + arraySuffix;
+    }
+
     boolean isVoid() {
         return this == VOID;
     }
@@ -74,6 +86,15 @@ enum Type {
         }
     }
 
+    public static Type find(Class<?> clazz) {
+        for (Type type : Type.values()) {
+            if (type.type == clazz) {
+                return type;
+            }
+        }
+        return OBJECT;
+    }
+
     public static Class findPrimitiveClass(String name) {
         for (Type type : Type.values()) {
             if (type.type != null && type.type.getName().equals(name)) {
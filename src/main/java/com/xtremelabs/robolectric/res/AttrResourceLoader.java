@@ -7,25 +7,38 @@ import org.w3c.dom.NodeList;
 
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 public class AttrResourceLoader extends XmlLoader {
-    Map<String, String> classAttrEnumToValue = new HashMap<String, String>();
-    Set<String> knownClassAttrs = new HashSet<String>();
+    private final XPathExpression enumXPath = XpathResourceXmlLoader.compile("/resources/declare-styleable/attr/enum");
+    private static final Map<String, String> NO_ENUM_VALUES = Collections.emptyMap();
+
+    // enum names to values, by class and attr
+    Map<String, Map<String, String>> classAttrEnumValues = new HashMap<String, Map<String, String>>();
+    // the enum values each view class ends up with for an attr, looked for up its superclasses the first time
+    private final Map<Class<?>, Map<String, Map<String, String>>> localEnumValuesByViewClass = new HashMap<Class<?>, Map<String, Map<String, String>>>();
+    private final Map<Class<?>, Map<String, Map<String, String>>> systemEnumValuesByViewClass = new HashMap<Class<?>, Map<String, Map<String, String>>>();
+
+    private AttrResourceLoader defaults;
 
     public AttrResourceLoader(ResourceExtractor resourceExtractor) {
         super(resourceExtractor);
     }
 
+    /**
+     * @param defaults where to look up the attrs that aren't loaded into this one; it isn't changed
+     */
+    AttrResourceLoader(AttrResourceLoader defaults) {
+        this(defaults.resourceExtractor);
+        this.defaults = defaults;
+    }
+
     @Override
     protected void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception {
-        XPathExpression stringsXPath = XPathFactory.newInstance().newXPath().compile("/resources/declare-styleable/attr/enum");
-        NodeList stringNodes = (NodeList) stringsXPath.evaluate(document, XPathConstants.NODESET);
+        NodeList stringNodes = (NodeList) enumXPath.evaluate(document, XPathConstants.NODESET);
         for (int i = 0; i < stringNodes.getLength(); i++) {
             Node node = stringNodes.item(i);
             String viewName = node.getParentNode().getParentNode().getAttributes().getNamedItem("name").getNodeValue();
@@ -33,38 +46,71 @@ public class AttrResourceLoader extends XmlLoader {
             String name = node.getAttributes().getNamedItem("name").getNodeValue();
             String value = node.getAttributes().getNamedItem("value").getNodeValue();
 
-            classAttrEnumToValue.put(key(viewName, enumName, name, isSystem), value);
-            knownClassAttrs.add(key(viewName, enumName, isSystem));
+            String classAttr = key(viewName, enumName, isSystem);
+            Map<String, String> enumValues = classAttrEnumValues.get(classAttr);
+            if (enumValues == null) {
+                // more enum values for an attr add to the default ones
+                Map<String, String> defaultEnumValues = defaults == null ? null : defaults.getClassAttrEnumValues(classAttr);
+                enumValues = defaultEnumValues == null ? new HashMap<String, String>() : new HashMap<String, String>(defaultEnumValues);
+                classAttrEnumValues.put(classAttr, enumValues);
+            }
+            enumValues.put(name, value);
         }
+        localEnumValuesByViewClass.clear();
+        systemEnumValuesByViewClass.clear();
     }
 
     public String convertValueToEnum(Class<? extends View> viewClass, String namespace, String attrName, String attrValue) {
         boolean isSystem = "android".equals(namespace);
-        String className = findKnownAttrClass(attrName, viewClass, isSystem);
-        return classAttrEnumToValue.get(key(className, attrName, attrValue, isSystem));
+        Map<String, String> enumValues = findEnumValues(attrName, viewClass, isSystem);
+        return enumValues == null ? null : enumValues.get(attrValue);
     }
 
     public boolean hasAttributeFor(Class<? extends View> viewClass, String namespace, String attrName) {
         boolean isSystem = "android".equals(namespace);
-        return findKnownAttrClass(attrName, viewClass, isSystem) != null;
+        return findEnumValues(attrName, viewClass, isSystem) != null;
+    }
+
+    private Map<String, String> findEnumValues(String attrName, Class<?> viewClass, boolean isSystem) {
+        if (viewClass == null) {
+            return null;
+        }
+
+        Map<Class<?>, Map<String, Map<String, String>>> enumValuesByViewClass = isSystem ? systemEnumValuesByViewClass : localEnumValuesByViewClass;
+        Map<String, Map<String, String>> enumValuesByAttrName = enumValuesByViewClass.get(viewClass);
+        if (enumValuesByAttrName == null) {
+            enumValuesByAttrName = new HashMap<String, Map<String, String>>();
+            enumValuesByViewClass.put(viewClass, enumValuesByAttrName);
+        }
+        Map<String, String> enumValues = enumValuesByAttrName.get(attrName);
+        if (enumValues == null) {
+            enumValues = findKnownAttrEnumValues(attrName, viewClass, isSystem);
+            enumValuesByAttrName.put(attrName, enumValues == null ? NO_ENUM_VALUES : enumValues);
+        }
+        return enumValues == NO_ENUM_VALUES ? null : enumValues;
     }
 
-    private String findKnownAttrClass(String attrName, Class<?> clazz, boolean isSystem) {
+    private Map<String, String> findKnownAttrEnumValues(String attrName, Class<?> clazz, boolean isSystem) {
         while (clazz != null) {
             String className = clazz.getName();
             if (isSystem) {
                 className = clazz.getSimpleName();
             }
-            if (knownClassAttrs.contains(key(className, attrName, isSystem))) {
-                return className;
+            Map<String, String> enumValues = getClassAttrEnumValues(key(className, attrName, isSystem));
+            if (enumValues != null) {
+                return enumValues;
             }
             clazz = clazz.getSuperclass();
         }
         return null;
     }
 
-    private String key(String viewName, String attrName, String name, boolean isSystem) {
-        return key(viewName, attrName, isSystem) + "#" + name;
+    private Map<String, String> getClassAttrEnumValues(String classAttr) {
+        Map<String, String> enumValues = classAttrEnumValues.get(classAttr);
+        if (enumValues == null && defaults != null) {
+            enumValues = defaults.getClassAttrEnumValues(classAttr);
+        }
+        return enumValues;
     }
 
     private String key(String viewName, String attrName, boolean isSystem) {
@@ -10,19 +10,24 @@ public class BoolResourceLoader extends XTagXmlResourceLoader
 
 	private static final String BOOL = "bool";
 	private final ResourceReferenceResolver<Boolean> boolResolver = 
-			new ResourceReferenceResolver<Boolean>(BOOL);
+			new ResourceReferenceResolver<Boolean>(BOOL, resourceExtractor);
 	
 	public BoolResourceLoader(ResourceExtractor resourceExtractor) {
 		super(resourceExtractor, BOOL);
 	}
 	
 	public boolean getValue(int resourceId) {
+		Boolean value = boolResolver.getValue(resourceId);
+		if (value != null) {
+			return value;
+		}
+
         final String resourceIdDebugString = String.valueOf(resourceId) + " (" + "0x" + Integer.toHexString(resourceId) + ")";
 		String resourceName = resourceExtractor.getResourceName(resourceId);
         if (resourceName == null) {
             throw new IllegalArgumentException("No such resource: " + resourceId);
         }
-        Boolean value = boolResolver.getValue(resourceName);
+        value = boolResolver.getValue(resourceName);
         if (value == null) { // instead of auto-unboxing NPE
             throw new IllegalArgumentException("Got resource name " + resourceName + " from id " + resourceIdDebugString
                                                    + ", but found no resource by that name");
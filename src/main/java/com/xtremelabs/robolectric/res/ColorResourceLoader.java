@@ -7,7 +7,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class ColorResourceLoader extends XpathResourceXmlLoader implements ResourceValueConverter {
-    private ResourceReferenceResolver<Integer> colorResolver = new ResourceReferenceResolver<Integer>("color");
+    private ResourceReferenceResolver<Integer> colorResolver = new ResourceReferenceResolver<Integer>("color", resourceExtractor);
     private static Map<String, Integer> androidColors = new HashMap<String, Integer>();
 
     static {
@@ -28,13 +28,13 @@ public class ColorResourceLoader extends XpathResourceXmlLoader implements Resou
         super(resourceExtractor, "/resources/color");
     }
 
-    public int getValue(int colorId) {
-        String resourceName = resourceExtractor.getResourceName(colorId);
-        if (resourceName == null) {
-            return -1;
-        }
+    ColorResourceLoader(ColorResourceLoader defaults) {
+        this(defaults.resourceExtractor);
+        colorResolver = new ResourceReferenceResolver<Integer>(defaults.colorResolver);
+    }
 
-        Integer colorResolverValue = colorResolver.getValue(resourceName);
+    public int getValue(int colorId) {
+        Integer colorResolverValue = colorResolver.getValue(colorId);
         return colorResolverValue == null ? -1 : colorResolverValue;
     }
 
@@ -5,14 +5,19 @@ public class DimenResourceLoader extends XpathResourceXmlLoader implements Resou
 
     private static final String[] UNITS = { "dp", "dip", "pt", "px", "sp" };
 	
-    private ResourceReferenceResolver<Float> dimenResolver = new ResourceReferenceResolver<Float>("dimen");
+    private ResourceReferenceResolver<Float> dimenResolver = new ResourceReferenceResolver<Float>("dimen", resourceExtractor);
 
     public DimenResourceLoader(ResourceExtractor resourceExtractor) {
         super(resourceExtractor, "/resources/dimen");
     }
 
+    DimenResourceLoader(DimenResourceLoader defaults) {
+        this(defaults.resourceExtractor);
+        dimenResolver = new ResourceReferenceResolver<Float>(defaults.dimenResolver);
+    }
+
     public float getValue(int resourceId) {
-        return dimenResolver.getValue(resourceExtractor.getResourceName(resourceId));
+        return dimenResolver.getValue(resourceId);
     }
 
     public float getValue(String resourceName, boolean isSystem) {
@@ -6,23 +6,45 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Parses each resource xml file once and hands the document to every {@link XmlLoader}. All the files are parsed
+ * before any loader sees them, and each loader then processes all of them before the next one starts, so a loader
+ * can refer to values that earlier loaders found in any of the files (e.g. plurals and string arrays referring to
+ * strings).
+ */
 public class DocumentLoader {
-    private final XmlLoader[] xmlLoaders;
-    private final DocumentBuilderFactory documentBuilderFactory;
-    private FileFilter xmlFileFilter = new FileFilter() {
+    private static final FileFilter XML_FILE_FILTER = new FileFilter() {
         @Override public boolean accept(File file) {
             return file.getName().endsWith(".xml");
         }
     };
 
+    private final XmlLoader[] xmlLoaders;
+    private final ParallelResourceXmlParser parallelResourceXmlParser;
+    private final DocumentBuilderFactory documentBuilderFactory;
+
     public DocumentLoader(XmlLoader... xmlLoaders) {
+        this(null, xmlLoaders);
+    }
+
+    /**
+     * @param parallelResourceXmlParser where to pick up directories that are being parsed in the background
+     */
+    public DocumentLoader(ParallelResourceXmlParser parallelResourceXmlParser, XmlLoader... xmlLoaders) {
         this.xmlLoaders = xmlLoaders;
+        this.parallelResourceXmlParser = parallelResourceXmlParser;
+        this.documentBuilderFactory = newDocumentBuilderFactory();
+    }
 
-        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    static DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
         documentBuilderFactory.setNamespaceAware(true);
         documentBuilderFactory.setIgnoringComments(true);
         documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+        return documentBuilderFactory;
     }
 
     public void loadResourceXmlDirs(File... resourceXmlDirs) throws Exception {
@@ -30,38 +52,88 @@ public class DocumentLoader {
     }
 
     public void loadResourceXmlDirs(boolean isSystem, File... resourceXmlDirs) throws Exception {
+        List<ResourceXmlFile> resourceXmlFiles = new ArrayList<ResourceXmlFile>();
         for (File resourceXmlDir : resourceXmlDirs) {
-            loadResourceXmlDir(resourceXmlDir, isSystem);
+            parseResourceXmlDir(resourceXmlDir, isSystem, resourceXmlFiles);
         }
+        process(resourceXmlFiles);
     }
 
     public void loadResourceXmlDir(File resourceXmlDir) throws Exception {
-        loadResourceXmlDir(resourceXmlDir, false);
+        loadResourceXmlDirs(false, resourceXmlDir);
     }
 
     public void loadSystemResourceXmlDir(File resourceXmlDir) throws Exception {
-        loadResourceXmlDir(resourceXmlDir, true);
+        loadResourceXmlDirs(true, resourceXmlDir);
+    }
+
+    /**
+     * Loads a local and a system directory in one go, so each loader sees the local files and then the system files.
+     *
+     * @param systemResourceXmlDir may be null if the Android SDK couldn't be found
+     */
+    public void loadLocalAndSystemResourceXmlDirs(File localResourceXmlDir, File systemResourceXmlDir) throws Exception {
+        List<ResourceXmlFile> resourceXmlFiles = new ArrayList<ResourceXmlFile>();
+        parseResourceXmlDir(localResourceXmlDir, false, resourceXmlFiles);
+        if (systemResourceXmlDir != null) {
+            parseResourceXmlDir(systemResourceXmlDir, true, resourceXmlFiles);
+        }
+        process(resourceXmlFiles);
     }
 
-    private void loadResourceXmlDir(File resourceXmlDir, boolean isSystem) throws Exception {
+    private void parseResourceXmlDir(File resourceXmlDir, boolean isSystem, List<ResourceXmlFile> resourceXmlFiles) throws Exception {
+        ParsedResourceXmlDir parsedResourceXmlDir = parallelResourceXmlParser == null ? null
+                : parallelResourceXmlParser.getParsedResourceXmlDir(resourceXmlDir);
+        if (parsedResourceXmlDir == null) {
+            parsedResourceXmlDir = parse(resourceXmlDir, documentBuilderFactory.newDocumentBuilder());
+        }
+
+        for (int i = 0; i < parsedResourceXmlDir.xmlFiles.length; i++) {
+            resourceXmlFiles.add(new ResourceXmlFile(parsedResourceXmlDir.xmlFiles[i], parsedResourceXmlDir.documents.get(i), isSystem));
+        }
+    }
+
+    static ParsedResourceXmlDir parse(File resourceXmlDir, DocumentBuilder documentBuilder) throws Exception {
         if (!resourceXmlDir.exists()) {
             throw new RuntimeException("no such directory " + resourceXmlDir);
         }
 
-        for (File file : resourceXmlDir.listFiles(xmlFileFilter)) {
-            loadResourceXmlFile(file, isSystem);
+        File[] xmlFiles = resourceXmlDir.listFiles(XML_FILE_FILTER);
+        List<Document> documents = new ArrayList<Document>(xmlFiles.length);
+        for (File file : xmlFiles) {
+            documents.add(documentBuilder.parse(file));
+            documentBuilder.reset();
         }
+        return new ParsedResourceXmlDir(xmlFiles, documents);
     }
 
-    private void loadResourceXmlFile(File file, boolean isSystem) throws Exception {
+    private void process(List<ResourceXmlFile> resourceXmlFiles) throws Exception {
         for (XmlLoader xmlLoader : xmlLoaders) {
-            xmlLoader.processResourceXml(file, parse(file), isSystem);
+            for (ResourceXmlFile resourceXmlFile : resourceXmlFiles) {
+                xmlLoader.processResourceXml(resourceXmlFile.file, resourceXmlFile.document, resourceXmlFile.isSystem);
+            }
         }
     }
 
-    private Document parse(File xmlFile) throws Exception {
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        return documentBuilder.parse(xmlFile);
+    private static class ResourceXmlFile {
+        private final File file;
+        private final Document document;
+        private final boolean isSystem;
+
+        private ResourceXmlFile(File file, Document document, boolean isSystem) {
+            this.file = file;
+            this.document = document;
+            this.isSystem = isSystem;
+        }
     }
 
+    static class ParsedResourceXmlDir {
+        private final File[] xmlFiles;
+        private final List<Document> documents;
+
+        private ParsedResourceXmlDir(File[] xmlFiles, List<Document> documents) {
+            this.xmlFiles = xmlFiles;
+            this.documents = documents;
+        }
+    }
 }
@@ -6,13 +6,13 @@ import org.w3c.dom.NodeList;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class IntegerArrayResourceLoader extends XpathResourceXmlLoader {
+    private final XPathExpression itemXPath = compile("item");
     private final Map<String, Integer[]> integerArrayValues = new HashMap<String, Integer[]>();
     
     private final IntegerResourceLoader integerResourceLoader;
@@ -33,7 +33,6 @@ public class IntegerArrayResourceLoader extends XpathResourceXmlLoader {
     }
 
     @Override protected void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException {
-        XPathExpression itemXPath = XPathFactory.newInstance().newXPath().compile("item");
         NodeList childNodes = (NodeList) itemXPath.evaluate(node, XPathConstants.NODESET);
         List<Integer> arrayValues = new ArrayList<Integer>();
         for (int j = 0; j < childNodes.getLength(); j++) {
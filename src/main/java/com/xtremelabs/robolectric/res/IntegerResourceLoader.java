@@ -4,19 +4,30 @@ import org.w3c.dom.Node;
 
 public class IntegerResourceLoader extends XTagXmlResourceLoader implements ResourceValueConverter {
 
-	private final ResourceReferenceResolver< Integer > integerResolver = new ResourceReferenceResolver< Integer >( "integer" );
+	private final ResourceReferenceResolver< Integer > integerResolver;
 
 	public IntegerResourceLoader( ResourceExtractor resourceExtractor ) {
 		super( resourceExtractor, "integer" );
+		integerResolver = new ResourceReferenceResolver< Integer >( "integer", resourceExtractor );
+	}
+
+	IntegerResourceLoader( IntegerResourceLoader defaults ) {
+		super( defaults.resourceExtractor, "integer" );
+		integerResolver = new ResourceReferenceResolver< Integer >( defaults.integerResolver );
 	}
 
 	public int getValue( int resourceId ) {
+		Integer value = integerResolver.getValue( resourceId );
+		if ( value != null ) {
+			return value;
+		}
+
         final String resourceIdDebugString = String.valueOf(resourceId) + " (" + "0x" + Integer.toHexString(resourceId) + ")";
 		String resourceName = resourceExtractor.getResourceName(resourceId);
         if (resourceName == null) {
             throw new IllegalArgumentException("No such resource: " + resourceId);
         }
-        Integer value = integerResolver.getValue(resourceName);
+        value = integerResolver.getValue(resourceName);
         if (value == null) { // instead of auto-unboxing NPE
             throw new IllegalArgumentException("Got resource name " + resourceName + " from id " + resourceIdDebugString
                                                    + ", but found no resource by that name");
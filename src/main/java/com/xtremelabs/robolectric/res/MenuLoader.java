@@ -29,6 +29,10 @@ public class MenuLoader extends XmlLoader {
         this.attrResourceLoader = attrResourceLoader;
     }
 
+    void setAttrResourceLoader(AttrResourceLoader attrResourceLoader) {
+        this.attrResourceLoader = attrResourceLoader;
+    }
+
     @Override
     protected void processResourceXml(File xmlFile, Document document, boolean ignored) throws Exception {
         MenuNode topLevelNode = new MenuNode("top-level", new HashMap<String, String>());
@@ -0,0 +1,99 @@
+package com.xtremelabs.robolectric.res;
+
+import com.xtremelabs.robolectric.res.DocumentLoader.ParsedResourceXmlDir;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses resource directories on a pool of background threads, each with its own {@link DocumentBuilder}. Only the
+ * parsing happens in parallel: {@link DocumentLoader}s still hand the documents to their loaders one after another on
+ * the calling thread, in the same order as without the parser, so the results don't depend on which directory
+ * happened to be parsed first.
+ */
+public class ParallelResourceXmlParser {
+    private final ExecutorService executorService;
+    private final ThreadLocal<DocumentBuilder> documentBuilders;
+    private final ConcurrentHashMap<File, Future<ParsedResourceXmlDir>> parsedResourceXmlDirs = new ConcurrentHashMap<File, Future<ParsedResourceXmlDir>>();
+
+    public ParallelResourceXmlParser(int threadCount) {
+        this.executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "robolectric-resource-parser-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final DocumentBuilderFactory documentBuilderFactory = DocumentLoader.newDocumentBuilderFactory();
+        this.documentBuilders = new ThreadLocal<DocumentBuilder>() {
+            @Override protected DocumentBuilder initialValue() {
+                try {
+                    synchronized (documentBuilderFactory) {
+                        return documentBuilderFactory.newDocumentBuilder();
+                    }
+                } catch (ParserConfigurationException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues the directory to be parsed, unless it's already queued.
+     */
+    public void parse(final File resourceXmlDir) {
+        FutureTask<ParsedResourceXmlDir> parsing = new FutureTask<ParsedResourceXmlDir>(new Callable<ParsedResourceXmlDir>() {
+            @Override public ParsedResourceXmlDir call() throws Exception {
+                return DocumentLoader.parse(resourceXmlDir, documentBuilders.get());
+            }
+        });
+
+        if (parsedResourceXmlDirs.putIfAbsent(resourceXmlDir, parsing) == null) {
+            executorService.execute(parsing);
+        }
+    }
+
+    /**
+     * Waits for the directory if it's been queued.
+     *
+     * @return the parsed directory, or null if it wasn't queued or couldn't be parsed, in which case the caller should
+     *         parse it itself
+     */
+    ParsedResourceXmlDir getParsedResourceXmlDir(File resourceXmlDir) {
+        Future<ParsedResourceXmlDir> parsing = parsedResourceXmlDirs.get(resourceXmlDir);
+        if (parsing == null) {
+            return null;
+        }
+
+        try {
+            return parsing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // parsing it again will throw the same exception, on the thread that needs the resources
+            return null;
+        }
+    }
+
+    /**
+     * Stops parsing and lets go of the parsed documents. Directories queued afterwards are rejected.
+     */
+    public void shutdown() {
+        executorService.shutdownNow();
+        parsedResourceXmlDirs.clear();
+    }
+}
@@ -6,24 +6,34 @@ import org.w3c.dom.NodeList;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class PluralResourceLoader extends XpathResourceXmlLoader implements ResourceValueConverter {
+    private final XPathExpression itemXPath = compile("item");
     Map<String, PluralRules> plurals = new HashMap<String, PluralRules>();
     private StringResourceLoader stringResourceLoader;
+    private PluralResourceLoader defaults;
 
     public PluralResourceLoader(ResourceExtractor resourceExtractor, StringResourceLoader stringResourceLoader) {
         super(resourceExtractor, "/resources/plurals");
         this.stringResourceLoader = stringResourceLoader;
     }
 
+    /**
+     * @param defaults             where to look up the plurals that aren't loaded into this one
+     * @param stringResourceLoader where plurals loaded into this one look up the strings they refer to
+     */
+    PluralResourceLoader(PluralResourceLoader defaults, StringResourceLoader stringResourceLoader) {
+        this(defaults.resourceExtractor, stringResourceLoader);
+        this.defaults = defaults;
+    }
+
     public String getValue(int resourceId, int quantity) {
         String name = resourceExtractor.getResourceName(resourceId);
-        PluralRules rules = plurals.get(name);
+        PluralRules rules = getPluralRules(name);
         if (rules != null) {
             Plural p = rules.find(quantity);
             if (p != null) {
@@ -33,8 +43,15 @@ public class PluralResourceLoader extends XpathResourceXmlLoader implements Reso
         return null;
     }
 
+    private PluralRules getPluralRules(String name) {
+        PluralRules rules = plurals.get(name);
+        if (rules == null && defaults != null) {
+            rules = defaults.getPluralRules(name);
+        }
+        return rules;
+    }
+
     @Override protected void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException {
-        XPathExpression itemXPath = XPathFactory.newInstance().newXPath().compile("item");
         NodeList childNodes = (NodeList) itemXPath.evaluate(node, XPathConstants.NODESET);
         PluralRules rules = new PluralRules();
         for (int j = 0; j < childNodes.getLength(); j++) {
@@ -2,13 +2,25 @@ package com.xtremelabs.robolectric.res;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ResourceExtractor {
-    private Map<String, Integer> localResourceStringToId = new HashMap<String, Integer>();
-    private Map<String, Integer> systemResourceStringToId = new HashMap<String, Integer>();
-    private Map<Integer, String> resourceIdToString = new HashMap<Integer, String>();
+    // R classes can't change once they're loaded, so each one is only scanned once per JVM and then shared by every
+    // ResourceExtractor it's added to. The keys are weak so R classes from discarded class loaders can go away.
+    private static final Map<Class, RClassResources> localRClassResources = new WeakHashMap<Class, RClassResources>();
+    private static final Map<Class, RClassResources> systemRClassResources = new WeakHashMap<Class, RClassResources>();
+
+    // most recently added first, since a later R class used to replace an earlier one's names
+    private List<RClassResources> localResources = new ArrayList<RClassResources>();
+    private List<RClassResources> systemResources = new ArrayList<RClassResources>();
+    // references like "@+id/title" exactly as they appear in the xml, so looking them up again doesn't strip them
+    private Map<String, Integer> localResourceReferenceToId = new HashMap<String, Integer>();
+    private Map<String, Integer> systemResourceReferenceToId = new HashMap<String, Integer>();
+    private int rClassesAdded;
 
     public void addLocalRClass(Class rClass) throws Exception {
         addRClass(rClass, false);
@@ -19,29 +31,44 @@ public class ResourceExtractor {
     }
 
     private void addRClass(Class rClass, boolean isSystemRClass) throws Exception {
-        for (Class innerClass : rClass.getClasses()) {
-            for (Field field : innerClass.getDeclaredFields()) {
-                if (field.getType().equals(Integer.TYPE) && Modifier.isStatic(field.getModifiers())) {
-                    String section = innerClass.getSimpleName();
-                    String name = section + "/" + field.getName();
-                    int value = field.getInt(null);
-
-                    if (isSystemRClass) {
-                        name = "android:" + name;
-                    }
+        RClassResources rClassResources = getRClassResources(rClass, isSystemRClass);
+        checkForDuplicateIds(rClassResources, localResources);
+        checkForDuplicateIds(rClassResources, systemResources);
 
-                    if (!section.equals("styleable")) {
-                        if (isSystemRClass) {
-                            systemResourceStringToId.put(name, value);
-                        } else {
-                            localResourceStringToId.put(name, value);
-                        }
+        (isSystemRClass ? systemResources : localResources).add(0, rClassResources);
+        localResourceReferenceToId.clear();
+        systemResourceReferenceToId.clear();
+        rClassesAdded++;
+    }
 
-                        if (resourceIdToString.containsKey(value)) {
-                            throw new RuntimeException(value + " is already defined with name: " + resourceIdToString.get(value) + " can't also call it: " + name);
-                        }
-                        resourceIdToString.put(value, name);
-                    }
+    /**
+     * @return how many R classes have been added, so anything cached from earlier lookups can tell it's out of date
+     */
+    int getRClassesAdded() {
+        return rClassesAdded;
+    }
+
+    private static RClassResources getRClassResources(Class rClass, boolean isSystemRClass) throws Exception {
+        Map<Class, RClassResources> rClassResourcesByClass = isSystemRClass ? systemRClassResources : localRClassResources;
+        synchronized (rClassResourcesByClass) {
+            RClassResources rClassResources = rClassResourcesByClass.get(rClass);
+            if (rClassResources == null) {
+                rClassResources = new RClassResources(rClass, isSystemRClass);
+                rClassResourcesByClass.put(rClass, rClassResources);
+            }
+            return rClassResources;
+        }
+    }
+
+    private static void checkForDuplicateIds(RClassResources rClassResources, List<RClassResources> addedResources) {
+        for (RClassResources added : addedResources) {
+            // look the smaller table's ids up in the bigger one, since the system R class has thousands of them
+            RClassResources smaller = rClassResources.size() < added.size() ? rClassResources : added;
+            RClassResources bigger = smaller == rClassResources ? added : rClassResources;
+            for (int value : smaller.resourceIdToString.ids()) {
+                if (bigger.resourceIdToString.containsKey(value)) {
+                    throw new RuntimeException(value + " is already defined with name: " + added.resourceIdToString.get(value)
+                            + " can't also call it: " + rClassResources.resourceIdToString.get(value));
                 }
             }
         }
@@ -67,7 +94,17 @@ public class ResourceExtractor {
         if (resourceName.equals("@null")) {
         	return 0;
         }
-        
+
+        Map<String, Integer> resourceReferenceToId = isSystemResource ? systemResourceReferenceToId : localResourceReferenceToId;
+        Integer resourceId = resourceReferenceToId.get(resourceName);
+        if (resourceId == null && !resourceReferenceToId.containsKey(resourceName)) {
+            resourceId = findResourceId(resourceName, isSystemResource);
+            resourceReferenceToId.put(resourceName, resourceId);
+        }
+        return resourceId;
+    }
+
+    private Integer findResourceId(String resourceName, boolean isSystemResource) {
         if (resourceName.startsWith("@+id")) {
             resourceName = resourceName.substring(2);
         } else if (resourceName.startsWith("@+android:id")) {
@@ -76,14 +113,63 @@ public class ResourceExtractor {
             resourceName = resourceName.substring(1);
         }
 
-        if (isSystemResource) {
-            return systemResourceStringToId.get(resourceName);
-        } else {
-            return localResourceStringToId.get(resourceName);
+        for (RClassResources rClassResources : isSystemResource ? systemResources : localResources) {
+            Integer resourceId = rClassResources.resourceStringToId.get(resourceName);
+            if (resourceId != null) {
+                return resourceId;
+            }
         }
+        return null;
     }
 
     public String getResourceName(int resourceId) {
-        return resourceIdToString.get(resourceId);
+        for (int i = 0; i < localResources.size(); i++) {
+            String resourceName = localResources.get(i).resourceIdToString.get(resourceId);
+            if (resourceName != null) {
+                return resourceName;
+            }
+        }
+        for (int i = 0; i < systemResources.size(); i++) {
+            String resourceName = systemResources.get(i).resourceIdToString.get(resourceId);
+            if (resourceName != null) {
+                return resourceName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The names and ids of one R class. Never changes after it's been built, so it can be shared between threads.
+     */
+    private static class RClassResources {
+        private final Map<String, Integer> resourceStringToId = new HashMap<String, Integer>();
+        private final ResourceIdMap<String> resourceIdToString = new ResourceIdMap<String>();
+
+        RClassResources(Class rClass, boolean isSystemRClass) throws Exception {
+            for (Class innerClass : rClass.getClasses()) {
+                String section = innerClass.getSimpleName();
+                if (section.equals("styleable")) {
+                    continue;
+                }
+                String prefix = (isSystemRClass ? "android:" : "") + section + "/";
+
+                for (Field field : innerClass.getDeclaredFields()) {
+                    if (field.getType().equals(Integer.TYPE) && Modifier.isStatic(field.getModifiers())) {
+                        String name = prefix + field.getName();
+                        int value = field.getInt(null);
+
+                        resourceStringToId.put(name, value);
+                        if (resourceIdToString.containsKey(value)) {
+                            throw new RuntimeException(value + " is already defined with name: " + resourceIdToString.get(value) + " can't also call it: " + name);
+                        }
+                        resourceIdToString.put(value, name);
+                    }
+                }
+            }
+        }
+
+        int size() {
+            return resourceStringToId.size();
+        }
     }
-}
\ No newline at end of file
+}
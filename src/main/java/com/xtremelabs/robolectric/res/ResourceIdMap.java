@@ -0,0 +1,133 @@
+package com.xtremelabs.robolectric.res;
+
+import java.util.Arrays;
+
+/**
+ * A map from resource ids to values that doesn't box the ids: the ids and values live in two parallel arrays, and a
+ * lookup is a single probe sequence through them. Resource ids are never 0, so 0 marks an empty slot, but a value can
+ * still be put for 0 in case an R class defines one.
+ */
+class ResourceIdMap<T> {
+    private static final int EMPTY = 0;
+
+    private int[] ids;
+    private Object[] values;
+    private int size;
+    private boolean hasZero;
+    private T zeroValue;
+
+    ResourceIdMap() {
+        ids = new int[16];
+        values = new Object[16];
+    }
+
+    public T get(int id) {
+        if (id == EMPTY) {
+            return zeroValue;
+        }
+        int mask = ids.length - 1;
+        for (int i = indexFor(id, mask); ; i = (i + 1) & mask) {
+            int slotId = ids[i];
+            if (slotId == id) {
+                // noinspection unchecked
+                return (T) values[i];
+            }
+            if (slotId == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && !hasZero;
+    }
+
+    public boolean containsKey(int id) {
+        if (id == EMPTY) {
+            return hasZero;
+        }
+        int mask = ids.length - 1;
+        for (int i = indexFor(id, mask); ; i = (i + 1) & mask) {
+            int slotId = ids[i];
+            if (slotId == id) {
+                return true;
+            }
+            if (slotId == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public void put(int id, T value) {
+        if (id == EMPTY) {
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+        // keep the table at most half full so probe sequences stay short
+        if ((size + 1) * 2 > ids.length) {
+            resize(ids.length * 2);
+        }
+        if (insert(ids, values, id, value)) {
+            size++;
+        }
+    }
+
+    public int[] ids() {
+        int[] presentIds = new int[size + (hasZero ? 1 : 0)];
+        int count = 0;
+        if (hasZero) {
+            presentIds[count++] = EMPTY;
+        }
+        for (int id : ids) {
+            if (id != EMPTY) {
+                presentIds[count++] = id;
+            }
+        }
+        return presentIds;
+    }
+
+    public void clear() {
+        Arrays.fill(ids, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+        hasZero = false;
+        zeroValue = null;
+    }
+
+    private void resize(int capacity) {
+        int[] newIds = new int[capacity];
+        Object[] newValues = new Object[capacity];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != EMPTY) {
+                insert(newIds, newValues, ids[i], values[i]);
+            }
+        }
+        ids = newIds;
+        values = newValues;
+    }
+
+    /**
+     * @return true if the id wasn't there before
+     */
+    private static boolean insert(int[] ids, Object[] values, int id, Object value) {
+        int mask = ids.length - 1;
+        for (int i = indexFor(id, mask); ; i = (i + 1) & mask) {
+            if (ids[i] == id) {
+                values[i] = value;
+                return false;
+            }
+            if (ids[i] == EMPTY) {
+                ids[i] = id;
+                values[i] = value;
+                return true;
+            }
+        }
+    }
+
+    private static int indexFor(int id, int mask) {
+        // ids of the same type only differ in their low bits, so spread them over the whole table
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -4,9 +4,15 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import android.R;
 import android.content.Context;
@@ -54,18 +60,17 @@ public class ResourceLoader {
 	private MenuLoader menuLoader;
 	private XmlFileLoader xmlFileLoader;
 	private PreferenceLoader preferenceLoader;
-	private final StringResourceLoader stringResourceLoader;
-	private final PluralResourceLoader pluralResourceLoader;
-	private final StringArrayResourceLoader stringArrayResourceLoader;
-	private final AttrResourceLoader attrResourceLoader;
-	private final ColorResourceLoader colorResourceLoader;
+	private final ValueResourceLoaders defaultValueResourceLoaders;
+	private final Map<String, ValueResourceLoaders> valueResourceLoadersByQualifiers = new HashMap<String, ValueResourceLoaders>();
+	private ValueResourceLoaders valueResourceLoaders;
 	private final DrawableResourceLoader drawableResourceLoader;
 	private final RawResourceLoader rawResourceLoader;
-	private final DimenResourceLoader dimenResourceLoader;
-	private final IntegerResourceLoader integerResourceLoader;
 	private final BoolResourceLoader boolResourceLoader;
 	private boolean isInitialized = false;
 	private boolean strictI18n = false;
+	private volatile ParallelResourceXmlParser parallelResourceXmlParser;
+	private Thread prefetcher;
+	private volatile RuntimeException prefetchFailure;
 	
 	private final Set<Integer> ninePatchDrawableIds = new HashSet<Integer>();
 
@@ -78,15 +83,10 @@ public class ResourceLoader {
 		resourceExtractor.addLocalRClass( rClass );
 		resourceExtractor.addSystemRClass( R.class );
 
-		stringResourceLoader = new StringResourceLoader( resourceExtractor );
-		pluralResourceLoader = new PluralResourceLoader( resourceExtractor, stringResourceLoader );
-		stringArrayResourceLoader = new StringArrayResourceLoader( resourceExtractor, stringResourceLoader );
-		colorResourceLoader = new ColorResourceLoader( resourceExtractor );
-		attrResourceLoader = new AttrResourceLoader( resourceExtractor );
+		defaultValueResourceLoaders = new ValueResourceLoaders( new StringResourceLoader( resourceExtractor ) );
+		valueResourceLoaders = defaultValueResourceLoaders;
 		drawableResourceLoader = new DrawableResourceLoader( resourceExtractor, resourceDir );
 		rawResourceLoader = new RawResourceLoader( resourceExtractor, resourceDir );
-		dimenResourceLoader = new DimenResourceLoader( resourceExtractor );
-		integerResourceLoader = new IntegerResourceLoader( resourceExtractor );
 		boolResourceLoader = new BoolResourceLoader( resourceExtractor );
 
 		this.resourceDir = resourceDir;
@@ -116,11 +116,17 @@ public class ResourceLoader {
 		if ( isInitialized ) {
 			return;
 		}
-		
+
+		RuntimeException prefetchFailure = awaitPrefetcher();
+		if ( prefetchFailure != null ) {
+			shutdownParallelResourceXmlParser();
+			throw prefetchFailure;
+		}
+
 		try {
 			if ( resourceDir != null ) {
-				viewLoader = new ViewLoader( resourceExtractor, attrResourceLoader );
-				menuLoader = new MenuLoader( resourceExtractor, attrResourceLoader );
+				viewLoader = new ViewLoader( resourceExtractor, valueResourceLoaders.attrResourceLoader );
+				menuLoader = new MenuLoader( resourceExtractor, valueResourceLoaders.attrResourceLoader );
 				preferenceLoader = new PreferenceLoader( resourceExtractor );
 				xmlFileLoader = new XmlFileLoader( resourceExtractor );
 
@@ -134,11 +140,7 @@ public class ResourceLoader {
 				File systemValueResourceDir = getValueResourceDir( systemResourceDir, null, false );
 				File preferenceDir = getPreferenceResourceDir( resourceDir );
 
-				loadStringResources( localValueResourceDir, systemValueResourceDir );
-				loadPluralsResources( localValueResourceDir, systemValueResourceDir );
-				loadValueResources( localValueResourceDir, systemValueResourceDir );
-				loadDimenResources( localValueResourceDir, systemValueResourceDir );
-				loadIntegerResource( localValueResourceDir, systemValueResourceDir );
+				loadValueResources( defaultValueResourceLoaders, localValueResourceDir, systemValueResourceDir );
 				loadViewResources( systemResourceDir, resourceDir );
 				loadMenuResources( resourceDir );
 				loadDrawableResources( resourceDir );
@@ -156,84 +158,181 @@ public class ResourceLoader {
 			throw e;
 		} catch ( Exception e ) {
 			throw new RuntimeException( e );
+		} finally {
+			shutdownParallelResourceXmlParser();
 		}
 		isInitialized = true;
 	}
 
 	/**
-	 * Reload values resources, include String, Plurals, Dimen, Prefs, Menu
+	 * Parallel resource loading is off unless the {@code robolectric.parallelResourceLoading} system property is true.
+	 */
+	public static boolean isParallelLoadingEnabled() {
+		return Boolean.getBoolean( "robolectric.parallelResourceLoading" );
+	}
+
+	/**
+	 * Starts parsing the resource directories on background threads, so that by the time the resources are first
+	 * needed, the loaders only have to go through the parsed documents. The loaders still do that one after another,
+	 * in the usual order, so the resources end up exactly as they would without prefetching.
+	 */
+	public synchronized void prefetchResources() {
+		if ( resourceDir == null || isInitialized || parallelResourceXmlParser != null ) {
+			return;
+		}
+
+		final ParallelResourceXmlParser parser = new ParallelResourceXmlParser( Runtime.getRuntime().availableProcessors() );
+		parallelResourceXmlParser = parser;
+		prefetcher = new Thread( "robolectric-resource-prefetcher" ) {
+			@Override
+			public void run() {
+				try {
+					for ( File resourceXmlDir : getResourceXmlDirs() ) {
+						parser.parse( resourceXmlDir );
+					}
+				} catch ( RejectedExecutionException e ) {
+					// the parser was shut down before we got to queue all of them
+				} catch ( RuntimeException e ) {
+					// init() rethrows it to the test that needs the resources
+					prefetchFailure = e;
+				}
+			}
+		};
+		prefetcher.setDaemon( true );
+		prefetcher.start();
+	}
+
+	/**
+	 * Waits until the prefetcher has queued every directory, which doesn't take long since it doesn't wait for them
+	 * to be parsed.
 	 *
-	 * @param locale
+	 * @return what the prefetcher failed with, if it failed, which is then forgotten so that only one caller sees it
 	 */
-	public void reloadValuesResouces( String qualifiers ) {
-		
-		File systemResourceDir = getSystemResourceDir( getPathToAndroidResources() );
-		File localValueResourceDir = getValueResourceDir( resourceDir, qualifiers, true );
-		File systemValueResourceDir = getValueResourceDir( systemResourceDir, null, false );
-		File preferenceDir = getPreferenceResourceDir( resourceDir );
-		
+	private synchronized RuntimeException awaitPrefetcher() {
+		if ( prefetcher == null ) {
+			return null;
+		}
 		try {
-			loadStringResources( localValueResourceDir, systemValueResourceDir );
-			loadPluralsResources( localValueResourceDir, systemValueResourceDir );
-			loadValueResources( localValueResourceDir, systemValueResourceDir );
-			loadDimenResources( localValueResourceDir, systemValueResourceDir );
-			loadIntegerResource( localValueResourceDir, systemValueResourceDir );
-			loadMenuResources( resourceDir );
-			loadPreferenceResources( preferenceDir );
-		} catch ( Exception e ) {
-			throw new RuntimeException( e );
-		} 
+			prefetcher.join();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		prefetcher = null;
+
+		RuntimeException failure = prefetchFailure;
+		prefetchFailure = null;
+		return failure;
 	}
-	
-	private File getSystemResourceDir( String pathToAndroidResources ) {
-		return pathToAndroidResources != null ? new File( pathToAndroidResources ) : null;
+
+	private void shutdownParallelResourceXmlParser() {
+		if ( parallelResourceXmlParser != null ) {
+			parallelResourceXmlParser.shutdown();
+			parallelResourceXmlParser = null;
+		}
 	}
 
-	private void loadStringResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader stringResourceDocumentLoader = new DocumentLoader( this.stringResourceLoader );
-		loadValueResourcesFromDirs( stringResourceDocumentLoader, localResourceDir, systemValueResourceDir );
+	/**
+	 * @return the directories {@link #init()} loads, in the order it loads them; layouts aren't loaded until they're
+	 *         inflated, so they aren't worth prefetching
+	 */
+	private List<File> getResourceXmlDirs() {
+		File systemResourceDir = getSystemResourceDir( getPathToAndroidResources() );
+		List<File> resourceXmlDirs = new ArrayList<File>();
+		resourceXmlDirs.add( getValueResourceDir( resourceDir, null, true ) );
+		resourceXmlDirs.add( getValueResourceDir( systemResourceDir, null, false ) );
+		resourceXmlDirs.addAll( Arrays.asList( resourceDir.listFiles( MENU_DIR_FILE_FILTER ) ) );
+		resourceXmlDirs.addAll( Arrays.asList( resourceDir.listFiles( DRAWABLE_DIR_FILE_FILTER ) ) );
+		File preferenceDir = getPreferenceResourceDir( resourceDir );
+		if ( preferenceDir.exists() ) {
+			resourceXmlDirs.add( preferenceDir );
+		}
+		return resourceXmlDirs;
 	}
 
-	private void loadPluralsResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader stringResourceDocumentLoader = new DocumentLoader( this.pluralResourceLoader );
-		loadValueResourcesFromDirs( stringResourceDocumentLoader, localResourceDir, systemValueResourceDir );
+	private DocumentLoader newDocumentLoader( XmlLoader... xmlLoaders ) {
+		ParallelResourceXmlParser parser = parallelResourceXmlParser;
+		return parser != null ? new DocumentLoader( parser, xmlLoaders ) : new DocumentLoader( xmlLoaders );
 	}
 
-	private void loadValueResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader valueResourceLoader = new DocumentLoader( stringArrayResourceLoader, colorResourceLoader,
-				attrResourceLoader );
-		loadValueResourcesFromDirs( valueResourceLoader, localResourceDir, systemValueResourceDir );
+	/**
+	 * Switches to the values resources for the given qualifiers, e.g. strings from values-fr for "fr", and reloads
+	 * the menus and preferences with them. Only the qualified values are loaded, the first time they're asked for;
+	 * anything they don't override is looked up in the default values. They're kept for the life of the loader, so
+	 * switching back and forth between qualifiers doesn't load any values again.
+	 *
+	 * @param qualifiers the qualifiers, or null or an empty string for the default values
+	 */
+	public void reloadValuesResouces( String qualifiers ) {
+		init();
+		try {
+			if ( qualifiers == null || qualifiers.isEmpty() ) {
+				useValueResourceLoaders( defaultValueResourceLoaders );
+			} else {
+				ValueResourceLoaders qualifiedValueResourceLoaders = valueResourceLoadersByQualifiers.get( qualifiers );
+				if ( qualifiedValueResourceLoaders == null ) {
+					qualifiedValueResourceLoaders = new ValueResourceLoaders( defaultValueResourceLoaders );
+					loadValueResources( qualifiedValueResourceLoaders, getValueResourceDir( resourceDir, qualifiers, true ), null );
+					valueResourceLoadersByQualifiers.put( qualifiers, qualifiedValueResourceLoaders );
+				}
+				useValueResourceLoaders( qualifiedValueResourceLoaders );
+			}
+
+			if ( resourceDir != null ) {
+				loadMenuResources( resourceDir );
+				loadPreferenceResources( getPreferenceResourceDir( resourceDir ) );
+			}
+		} catch ( I18nException e ) {
+			throw e;
+		} catch ( RuntimeException e ) {
+			throw e;
+		} catch ( Exception e ) {
+			throw new RuntimeException( e );
+		}
 	}
 
-	private void loadDimenResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader dimenResourceDocumentLoader = new DocumentLoader( this.dimenResourceLoader );
-		loadValueResourcesFromDirs( dimenResourceDocumentLoader, localResourceDir, systemValueResourceDir );
+	private void useValueResourceLoaders( ValueResourceLoaders valueResourceLoaders ) {
+		this.valueResourceLoaders = valueResourceLoaders;
+		if ( viewLoader != null ) {
+			viewLoader.setAttrResourceLoader( valueResourceLoaders.attrResourceLoader );
+		}
+		if ( menuLoader != null ) {
+			menuLoader.setAttrResourceLoader( valueResourceLoaders.attrResourceLoader );
+		}
 	}
 
-	private void loadIntegerResource( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader integerResourceDocumentLoader = new DocumentLoader( this.integerResourceLoader );
-		loadValueResourcesFromDirs( integerResourceDocumentLoader, localResourceDir, systemValueResourceDir );
+	private File getSystemResourceDir( String pathToAndroidResources ) {
+		return pathToAndroidResources != null ? new File( pathToAndroidResources ) : null;
+	}
+
+	/**
+	 * Loads all the values resources in a single pass, so each file under values/ is only parsed once.
+	 *
+	 * @param systemValueResourceDir may be null, to only load the local values
+	 */
+	private void loadValueResources( ValueResourceLoaders valueResourceLoaders, File localResourceDir,
+			File systemValueResourceDir ) throws Exception {
+		DocumentLoader valueDocumentLoader = newDocumentLoader( valueResourceLoaders.getLoaders() );
+		valueDocumentLoader.loadLocalAndSystemResourceXmlDirs( localResourceDir, systemValueResourceDir );
 	}
 
 	private void loadViewResources( File systemResourceDir, File xmlResourceDir ) throws Exception {
-		DocumentLoader viewDocumentLoader = new DocumentLoader( viewLoader );
-		loadLayoutResourceXmlSubDirs( viewDocumentLoader, xmlResourceDir, false );
-		loadLayoutResourceXmlSubDirs( viewDocumentLoader, systemResourceDir, true );
+		loadLayoutResourceXmlSubDirs( xmlResourceDir, false );
+		loadLayoutResourceXmlSubDirs( systemResourceDir, true );
 	}
 
 	private void loadMenuResources( File xmlResourceDir ) throws Exception {
-		DocumentLoader menuDocumentLoader = new DocumentLoader( menuLoader );
+		DocumentLoader menuDocumentLoader = newDocumentLoader( menuLoader );
 		loadMenuResourceXmlDirs( menuDocumentLoader, xmlResourceDir );
 	}
 
 	private void loadDrawableResources( File xmlResourceDir ) throws Exception {
-		DocumentLoader drawableDocumentLoader = new DocumentLoader( drawableResourceLoader );
+		DocumentLoader drawableDocumentLoader = newDocumentLoader( drawableResourceLoader );
 		loadDrawableResourceXmlDirs( drawableDocumentLoader, xmlResourceDir );
 	}
 
 	private void loadPreferenceResources( File xmlResourceDir ) throws Exception {
 		if ( xmlResourceDir.exists() ) {
-			DocumentLoader preferenceDocumentLoader = new DocumentLoader( preferenceLoader );
+			DocumentLoader preferenceDocumentLoader = newDocumentLoader( preferenceLoader );
 			preferenceDocumentLoader.loadResourceXmlDir( xmlResourceDir );
 		}
 	}
@@ -244,15 +343,17 @@ public class ResourceLoader {
 	private void loadXmlFileResources( File xmlResourceDir ) throws Exception {
 		if ( xmlResourceDir.exists() ) {
 			DocumentLoader xmlFileDocumentLoader = 
-					new DocumentLoader( xmlFileLoader );
+					newDocumentLoader( xmlFileLoader );
 			xmlFileDocumentLoader.loadResourceXmlDir( xmlResourceDir );
 		}
 	}
 
-	private void loadLayoutResourceXmlSubDirs( DocumentLoader layoutDocumentLoader, File xmlResourceDir, boolean isSystem )
-			throws Exception {
+	/**
+	 * Layouts are only parsed when they're first inflated.
+	 */
+	private void loadLayoutResourceXmlSubDirs( File xmlResourceDir, boolean isSystem ) {
 		if ( xmlResourceDir != null ) {
-			layoutDocumentLoader.loadResourceXmlDirs( isSystem, xmlResourceDir.listFiles( LAYOUT_DIR_FILE_FILTER ) );
+			viewLoader.addLayoutDirs( isSystem, xmlResourceDir.listFiles( LAYOUT_DIR_FILE_FILTER ) );
 		}
 	}
 
@@ -268,24 +369,6 @@ public class ResourceLoader {
 		}
 	}
 
-	private void loadValueResourcesFromDirs( DocumentLoader documentLoader, File localValueResourceDir,
-			File systemValueResourceDir ) throws Exception {
-		loadValueResourcesFromDir( documentLoader, localValueResourceDir );
-		loadSystemResourceXmlDir( documentLoader, systemValueResourceDir );
-	}
-
-	private void loadValueResourcesFromDir( DocumentLoader documentloader, File xmlResourceDir ) throws Exception {
-		if ( xmlResourceDir != null ) {
-			documentloader.loadResourceXmlDir( xmlResourceDir );
-		}
-	}
-
-	private void loadSystemResourceXmlDir( DocumentLoader documentLoader, File stringResourceDir ) throws Exception {
-		if ( stringResourceDir != null ) {
-			documentLoader.loadSystemResourceXmlDir( stringResourceDir );
-		}
-	}
-
 	private File getValueResourceDir( File xmlResourceDir, String qualifiers, boolean isLocal ) {
 		String valuesDir = "values";
 		if( qualifiers != null && !qualifiers.isEmpty() && isLocal ){
@@ -403,16 +486,11 @@ public class ResourceLoader {
 	 */
 	protected ResourceLoader( StringResourceLoader stringResourceLoader ) {
 		resourceExtractor = new ResourceExtractor();
-		this.stringResourceLoader = stringResourceLoader;
-		pluralResourceLoader = null;
+		defaultValueResourceLoaders = new ValueResourceLoaders( stringResourceLoader );
+		valueResourceLoaders = defaultValueResourceLoaders;
 		viewLoader = null;
-		stringArrayResourceLoader = null;
-		attrResourceLoader = null;
-		colorResourceLoader = null;
 		drawableResourceLoader = null;
 		rawResourceLoader = null;
-		dimenResourceLoader = null;
-		integerResourceLoader = null;
 		boolResourceLoader = null;
 	}
 
@@ -434,27 +512,27 @@ public class ResourceLoader {
 
 	public int getColorValue( int id ) {
 		init();
-		return colorResourceLoader.getValue( id );
+		return valueResourceLoaders.colorResourceLoader.getValue( id );
 	}
 
 	public String getStringValue( int id ) {
 		init();
-		return stringResourceLoader.getValue( id );
+		return valueResourceLoaders.stringResourceLoader.getValue( id );
 	}
 
 	public String getPluralStringValue( int id, int quantity ) {
 		init();
-		return pluralResourceLoader.getValue( id, quantity );
+		return valueResourceLoaders.pluralResourceLoader.getValue( id, quantity );
 	}
 
 	public float getDimenValue( int id ) {
 		init();
-		return dimenResourceLoader.getValue( id );
+		return valueResourceLoaders.dimenResourceLoader.getValue( id );
 	}
 
 	public int getIntegerValue( int id ) {
 		init();
-		return integerResourceLoader.getValue( id );
+		return valueResourceLoaders.integerResourceLoader.getValue( id );
 	}
 	
 	public boolean getBooleanValue( int id ) {
@@ -561,7 +639,7 @@ public class ResourceLoader {
 
 	public String[] getStringArrayValue( int id ) {
 		init();
-		return stringArrayResourceLoader.getArrayValue( id );
+		return valueResourceLoaders.stringArrayResourceLoader.getArrayValue( id );
 	}
 
 	public void inflateMenu( Context context, int resource, Menu root ) {
@@ -592,11 +670,60 @@ public class ResourceLoader {
 	}
 
 	public ViewLoader.ViewNode getLayoutViewNode( String layoutName ) {
-		return viewLoader.viewNodesByLayoutName.get( layoutName );
+		return viewLoader.getViewNode( layoutName );
 	}
 
 	public void setLayoutQualifierSearchPath( String... locations ) {
 		init();
 		viewLoader.setLayoutQualifierSearchPath( locations );
 	}
+
+	/**
+	 * The values resources for one set of qualifiers. They aren't changed once they're loaded, so switching to other
+	 * qualifiers just means using another instance.
+	 */
+	private static class ValueResourceLoaders {
+		private final StringResourceLoader stringResourceLoader;
+		private final PluralResourceLoader pluralResourceLoader;
+		private final StringArrayResourceLoader stringArrayResourceLoader;
+		private final ColorResourceLoader colorResourceLoader;
+		private final AttrResourceLoader attrResourceLoader;
+		private final DimenResourceLoader dimenResourceLoader;
+		private final IntegerResourceLoader integerResourceLoader;
+
+		private ValueResourceLoaders( StringResourceLoader stringResourceLoader ) {
+			ResourceExtractor resourceExtractor = stringResourceLoader.resourceExtractor;
+			this.stringResourceLoader = stringResourceLoader;
+			pluralResourceLoader = new PluralResourceLoader( resourceExtractor, stringResourceLoader );
+			stringArrayResourceLoader = new StringArrayResourceLoader( resourceExtractor, stringResourceLoader );
+			colorResourceLoader = new ColorResourceLoader( resourceExtractor );
+			attrResourceLoader = new AttrResourceLoader( resourceExtractor );
+			dimenResourceLoader = new DimenResourceLoader( resourceExtractor );
+			integerResourceLoader = new IntegerResourceLoader( resourceExtractor );
+		}
+
+		/**
+		 * Starts out empty, ready to have more specific values loaded into it, and looks up everything else in the
+		 * other loaders.
+		 */
+		private ValueResourceLoaders( ValueResourceLoaders defaults ) {
+			stringResourceLoader = new StringResourceLoader( defaults.stringResourceLoader );
+			pluralResourceLoader = new PluralResourceLoader( defaults.pluralResourceLoader, stringResourceLoader );
+			stringArrayResourceLoader = new StringArrayResourceLoader( defaults.stringArrayResourceLoader,
+					stringResourceLoader );
+			colorResourceLoader = new ColorResourceLoader( defaults.colorResourceLoader );
+			attrResourceLoader = new AttrResourceLoader( defaults.attrResourceLoader );
+			dimenResourceLoader = new DimenResourceLoader( defaults.dimenResourceLoader );
+			integerResourceLoader = new IntegerResourceLoader( defaults.integerResourceLoader );
+		}
+
+		/**
+		 * @return the loaders in the order they have to load the values in: strings come first because plurals and
+		 *         string arrays refer to them
+		 */
+		private XmlLoader[] getLoaders() {
+			return new XmlLoader[] { stringResourceLoader, pluralResourceLoader, stringArrayResourceLoader,
+					colorResourceLoader, attrResourceLoader, dimenResourceLoader, integerResourceLoader };
+		}
+	}
 }
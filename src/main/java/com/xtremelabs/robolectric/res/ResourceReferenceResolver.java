@@ -6,16 +6,56 @@ import java.util.List;
 import java.util.Map;
 
 class ResourceReferenceResolver<T> {
+    private static final Object NO_VALUE = new Object();
+
     private Map<String, T> attributeNamesToValues = new HashMap<String, T>();
+    // filled in as values are looked up by id, and emptied whenever a value or an R class is added
+    private ResourceIdMap<Object> resourceIdsToValues = new ResourceIdMap<Object>();
+    private int rClassesAddedToResourceIds;
     private Map<String, List<String>> unresolvedReferences = new HashMap<String, List<String>>();
     private String prefix;
+    private final ResourceReferenceResolver<T> defaults;
+    private final ResourceExtractor resourceExtractor;
 
-    ResourceReferenceResolver(String prefix) {
+    /**
+     * @param resourceExtractor what resource ids are looked up by name in
+     */
+    ResourceReferenceResolver(String prefix, ResourceExtractor resourceExtractor) {
         this.prefix = prefix;
+        this.defaults = null;
+        this.resourceExtractor = resourceExtractor;
+    }
+
+    /**
+     * @param defaults where to look up the values that aren't added to this one; it isn't changed
+     */
+    ResourceReferenceResolver(ResourceReferenceResolver<T> defaults) {
+        this.prefix = defaults.prefix;
+        this.defaults = defaults;
+        this.resourceExtractor = defaults.resourceExtractor;
     }
 
     public T getValue(String resourceName) {
-        return attributeNamesToValues.get(resourceName);
+        T value = attributeNamesToValues.get(resourceName);
+        if (value == null && defaults != null) {
+            value = defaults.getValue(resourceName);
+        }
+        return value;
+    }
+
+    public T getValue(int resourceId) {
+        if (rClassesAddedToResourceIds != resourceExtractor.getRClassesAdded()) {
+            // an id can name a different resource now
+            resourceIdsToValues.clear();
+            rClassesAddedToResourceIds = resourceExtractor.getRClassesAdded();
+        }
+        Object value = resourceIdsToValues.get(resourceId);
+        if (value == null) {
+            value = getValue(resourceExtractor.getResourceName(resourceId));
+            resourceIdsToValues.put(resourceId, value == null ? NO_VALUE : value);
+        }
+        // noinspection unchecked
+        return value == NO_VALUE ? null : (T) value;
     }
 
     public void processResource(String name, String rawValue, ResourceValueConverter loader, boolean isSystem) {
@@ -31,7 +71,7 @@ class ResourceReferenceResolver<T> {
     }
 
     public void addAttribute(String valuePointer, T value) {
-        attributeNamesToValues.put(valuePointer, value);
+        putValue(valuePointer, value);
         resolveUnresolvedReferences(valuePointer, value);
     }
 
@@ -41,7 +81,7 @@ class ResourceReferenceResolver<T> {
             return;
         }
         for (String reference : references) {
-            attributeNamesToValues.put(reference, value);
+            putValue(reference, value);
         }
     }
 
@@ -56,11 +96,18 @@ class ResourceReferenceResolver<T> {
 
     private void addAttributeReference(String rawValue, String valuePointer) {
         String attributeName = rawValue.substring(1);
-        T value = attributeNamesToValues.get(attributeName);
+        T value = getValue(attributeName);
         if (value == null) {
             addUnresolvedReference(valuePointer, attributeName);
         } else {
-            attributeNamesToValues.put(valuePointer, value);
+            putValue(valuePointer, value);
+        }
+    }
+
+    private void putValue(String attributeName, T value) {
+        attributeNamesToValues.put(attributeName, value);
+        if (!resourceIdsToValues.isEmpty()) {
+            resourceIdsToValues.clear();
         }
     }
 }
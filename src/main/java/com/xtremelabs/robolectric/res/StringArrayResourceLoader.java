@@ -6,28 +6,45 @@ import org.w3c.dom.NodeList;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class StringArrayResourceLoader extends XpathResourceXmlLoader {
+    private final XPathExpression itemXPath = compile("item");
     Map<String, String[]> stringArrayValues = new HashMap<String, String[]>();
     private StringResourceLoader stringResourceLoader;
+    private StringArrayResourceLoader defaults;
 
     public StringArrayResourceLoader(ResourceExtractor resourceExtractor, StringResourceLoader stringResourceLoader) {
         super(resourceExtractor, "/resources/string-array");
         this.stringResourceLoader = stringResourceLoader;
     }
 
+    /**
+     * @param defaults             where to look up the arrays that aren't loaded into this one
+     * @param stringResourceLoader where arrays loaded into this one look up the strings they refer to
+     */
+    StringArrayResourceLoader(StringArrayResourceLoader defaults, StringResourceLoader stringResourceLoader) {
+        this(defaults.resourceExtractor, stringResourceLoader);
+        this.defaults = defaults;
+    }
+
     public String[] getArrayValue(int resourceId) {
         String resourceName = resourceExtractor.getResourceName(resourceId);
-        return stringArrayValues.get(resourceName);
+        return getArrayValue(resourceName);
+    }
+
+    private String[] getArrayValue(String resourceName) {
+        String[] arrayValue = stringArrayValues.get(resourceName);
+        if (arrayValue == null && defaults != null) {
+            arrayValue = defaults.getArrayValue(resourceName);
+        }
+        return arrayValue;
     }
 
     @Override protected void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException {
-        XPathExpression itemXPath = XPathFactory.newInstance().newXPath().compile("item");
         NodeList childNodes = (NodeList) itemXPath.evaluate(node, XPathConstants.NODESET);
         List<String> arrayValues = new ArrayList<String>();
         for (int j = 0; j < childNodes.getLength(); j++) {
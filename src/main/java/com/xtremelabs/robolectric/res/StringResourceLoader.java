@@ -3,14 +3,23 @@ package com.xtremelabs.robolectric.res;
 import org.w3c.dom.Node;
 
 public class StringResourceLoader extends XpathResourceXmlLoader implements ResourceValueConverter {
-    private ResourceReferenceResolver<String> stringResolver = new ResourceReferenceResolver<String>("string");
+    private ResourceReferenceResolver<String> stringResolver = new ResourceReferenceResolver<String>("string", resourceExtractor);
 
     public StringResourceLoader(ResourceExtractor resourceExtractor) {
         super(resourceExtractor, "/resources/string");
     }
 
+    /**
+     * Looks up the values that aren't loaded into this one (e.g. the ones a resource qualifier doesn't override) in
+     * the other loader, which loading values into this one leaves alone.
+     */
+    StringResourceLoader(StringResourceLoader defaults) {
+        this(defaults.resourceExtractor);
+        stringResolver = new ResourceReferenceResolver<String>(defaults.stringResolver);
+    }
+
     public String getValue(int resourceId) {
-        return stringResolver.getValue(resourceExtractor.getResourceName(resourceId));
+        return stringResolver.getValue(resourceId);
     }
 
     public String getValue(String resourceName, boolean isSystem) {
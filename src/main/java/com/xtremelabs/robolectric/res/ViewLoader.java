@@ -15,7 +15,9 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.parsers.DocumentBuilder;
 import java.io.File;
+import java.io.FileFilter;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -24,24 +26,81 @@ import java.util.*;
 import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 
 public class ViewLoader extends XmlLoader {
+    private static final FileFilter XML_FILE_FILTER = new FileFilter() {
+        @Override public boolean accept(File file) {
+            return file.getName().endsWith(".xml");
+        }
+    };
+
     protected Map<String, ViewNode> viewNodesByLayoutName = new HashMap<String, ViewNode>();
+    private Map<String, File> unparsedLayoutFilesByLayoutName = new HashMap<String, File>();
+    private DocumentBuilder documentBuilder;
     private AttrResourceLoader attrResourceLoader;
     private List<String> qualifierSearchPath = new ArrayList<String>();
 
+    // reflective lookups shared by every node, since list items inflate the same views over and over
+    private final Map<String, Class<?>> classesByName = new HashMap<String, Class<?>>();
+    private final Map<Class<?>, Constructor<? extends View>> viewConstructorsByClass = new HashMap<Class<?>, Constructor<? extends View>>();
+    private final Map<Class<?>, Constructor<? extends Fragment>> fragmentConstructorsByClass = new HashMap<Class<?>, Constructor<? extends Fragment>>();
+    private Method onFinishInflate;
+
     public ViewLoader(ResourceExtractor resourceExtractor, AttrResourceLoader attrResourceLoader) {
         super(resourceExtractor);
         this.attrResourceLoader = attrResourceLoader;
     }
 
+    void setAttrResourceLoader(AttrResourceLoader attrResourceLoader) {
+        this.attrResourceLoader = attrResourceLoader;
+    }
+
     @Override
     protected void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception {
         ViewNode topLevelNode = new ViewNode("top-level", new HashMap<String, String>(), isSystem);
         processChildren(document.getChildNodes(), topLevelNode);
+        viewNodesByLayoutName.put(toLayoutName(xmlFile, isSystem), topLevelNode.getChildren().get(0));
+    }
+
+    /**
+     * Only remembers where the layouts in the directories are. Each layout is parsed the first time it's needed, so
+     * tests that only inflate a few layouts don't pay for parsing all of them, or all of the SDK's.
+     */
+    public void addLayoutDirs(boolean isSystem, File... layoutDirs) {
+        for (File layoutDir : layoutDirs) {
+            for (File layoutFile : layoutDir.listFiles(XML_FILE_FILTER)) {
+                unparsedLayoutFilesByLayoutName.put(toLayoutName(layoutFile, isSystem), layoutFile);
+            }
+        }
+    }
+
+    private String toLayoutName(File xmlFile, boolean isSystem) {
         String layoutName = xmlFile.getParentFile().getName() + "/" + xmlFile.getName().replace(".xml", "");
         if (isSystem) {
             layoutName = "android:" + layoutName;
         }
-        viewNodesByLayoutName.put(layoutName, topLevelNode.getChildren().get(0));
+        return layoutName;
+    }
+
+    ViewNode getViewNode(String layoutName) {
+        ViewNode viewNode = viewNodesByLayoutName.get(layoutName);
+        if (viewNode == null) {
+            File layoutFile = unparsedLayoutFilesByLayoutName.remove(layoutName);
+            if (layoutFile != null) {
+                parseLayout(layoutFile, layoutName.startsWith("android:"));
+                viewNode = viewNodesByLayoutName.get(layoutName);
+            }
+        }
+        return viewNode;
+    }
+
+    private void parseLayout(File layoutFile, boolean isSystem) {
+        try {
+            if (documentBuilder == null) {
+                documentBuilder = DocumentLoader.newDocumentBuilderFactory().newDocumentBuilder();
+            }
+            processResourceXml(layoutFile, documentBuilder.parse(layoutFile), isSystem);
+        } catch (Exception e) {
+            throw new RuntimeException("error parsing " + layoutFile, e);
+        }
     }
 
     private void processChildren(NodeList childNodes, ViewNode parent) {
@@ -64,7 +123,7 @@ public class ViewLoader extends XmlLoader {
         }
 
         if (name.equals("requestFocus")) {
-            parent.attributes.put("android:focus", "true");
+            parent.putAttribute("android:focus", "true");
             parent.requestFocusOverride = true;
         } else if (!name.startsWith("#")) {
             ViewNode viewNode = new ViewNode(name, attrMap, parent.isSystem);
@@ -95,7 +154,7 @@ public class ViewLoader extends XmlLoader {
             if (attributes != null) {
                 for (Map.Entry<String, String> entry : attributes.entrySet()) {
                     if (!entry.getKey().equals("layout")) {
-                        viewNode.attributes.put(entry.getKey(), entry.getValue());
+                        viewNode.putAttribute(entry.getKey(), entry.getValue());
                     }
                 }
             }
@@ -111,13 +170,13 @@ public class ViewLoader extends XmlLoader {
         if (layoutName.startsWith("layout/") && !qualifierSearchPath.isEmpty()) {
             String rawLayoutName = layoutName.substring("layout/".length());
             for (String location : qualifierSearchPath) {
-                ViewNode foundNode = viewNodesByLayoutName.get("layout-" + location + "/" + rawLayoutName);
+                ViewNode foundNode = getViewNode("layout-" + location + "/" + rawLayoutName);
                 if (foundNode != null) {
                     return foundNode;
                 }
             }
         }
-        return viewNodesByLayoutName.get(layoutName);
+        return getViewNode(layoutName);
     }
 
     public void setLayoutQualifierSearchPath(String... locations) {
@@ -126,12 +185,21 @@ public class ViewLoader extends XmlLoader {
 
     public class ViewNode {
         private String name;
-        private final Map<String, String> attributes;
+        // replaced rather than changed, since the attribute sets made from it share it
+        private Map<String, String> attributes;
 
         private List<ViewNode> children = new ArrayList<ViewNode>();
         boolean requestFocusOverride = false;
         boolean isSystem = false;
 
+        // worked out on the first inflation and reused after that; each view still gets its own attribute set
+        private Class<? extends View> viewClass;
+        private Constructor<? extends View> viewConstructor;
+        private Class<?>[] viewConstructorParameterTypes;
+        // worked out by the first attribute set made from the attributes, and shared by the ones after it
+        private TestAttributeSet.AttributeNames attributeNames;
+        private TestAttributeSet.ResourceIds resourceIds;
+
         public ViewNode(String name, Map<String, String> attributes, boolean isSystem) {
             this.name = name;
             this.attributes = attributes;
@@ -146,6 +214,18 @@ public class ViewLoader extends XmlLoader {
             children.add(viewNode);
         }
 
+        private void putAttribute(String name, String value) {
+            if (value.equals(attributes.get(name))) {
+                return;
+            }
+            Map<String, String> changedAttributes = new HashMap<String, String>(attributes);
+            if (changedAttributes.put(name, value) == null) {
+                attributeNames = null;
+            }
+            resourceIds = null;
+            attributes = changedAttributes;
+        }
+
         public View inflate(Context context, View parent) throws Exception {
             View view = create(context, (ViewGroup) parent);
 
@@ -158,8 +238,10 @@ public class ViewLoader extends XmlLoader {
         }
 
         private void invokeOnFinishInflate(View view) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
-            Method onFinishInflate = View.class.getDeclaredMethod("onFinishInflate");
-            onFinishInflate.setAccessible(true);
+            if (onFinishInflate == null) {
+                onFinishInflate = View.class.getDeclaredMethod("onFinishInflate");
+                onFinishInflate.setAccessible(true);
+            }
             onFinishInflate.invoke(view);
         }
 
@@ -184,13 +266,12 @@ public class ViewLoader extends XmlLoader {
         }
 
         private FrameLayout constructFragment(Context context) throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-            TestAttributeSet attributeSet = new TestAttributeSet(attributes, resourceExtractor, attrResourceLoader, View.class, isSystem);
+            TestAttributeSet attributeSet = getAttributeSet(View.class);
             if (strictI18n) {
                 attributeSet.validateStrictI18n();
             }
 
-            Class<? extends Fragment> clazz = loadFragmentClass(attributes.get("android:name"));
-            Fragment fragment = ((Constructor<? extends Fragment>) clazz.getConstructor()).newInstance();
+            Fragment fragment = getFragmentConstructor(attributes.get("android:name")).newInstance();
             if (!(context instanceof FragmentActivity)) {
                 throw new RuntimeException("Cannot inflate a fragment unless the activity is a FragmentActivity");
             }
@@ -219,20 +300,83 @@ public class ViewLoader extends XmlLoader {
         }
 
         private View constructView(Context context) throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-            Class<? extends View> clazz = pickViewClass();
-            try {
-                TestAttributeSet attributeSet = new TestAttributeSet(attributes, resourceExtractor, attrResourceLoader, clazz, isSystem);
-                if (strictI18n) {
-                    attributeSet.validateStrictI18n();
+            if (viewClass == null) {
+                viewClass = pickViewClass();
+            }
+            TestAttributeSet attributeSet = getAttributeSet(viewClass);
+            if (strictI18n) {
+                attributeSet.validateStrictI18n();
+            }
+            if (viewConstructor == null) {
+                viewConstructor = getViewConstructor(viewClass);
+                viewConstructorParameterTypes = viewConstructor.getParameterTypes();
+            }
+
+            if (viewConstructorParameterTypes.length == 1) {
+                return viewConstructor.newInstance(context);
+            } else if (viewConstructorParameterTypes[1] == AttributeSet.class) {
+                return viewConstructor.newInstance(context, attributeSet);
+            } else {
+                return viewConstructor.newInstance(context, "");
+            }
+        }
+
+        private TestAttributeSet getAttributeSet(Class<? extends View> viewClass) {
+            TestAttributeSet attributeSet = new TestAttributeSet(attributes, attributeNames, resourceIds,
+                    resourceExtractor, attrResourceLoader, viewClass, isSystem);
+            if (attributeNames == null) {
+                attributeNames = attributeSet.getAttributeNames();
+            }
+            if (resourceIds == null) {
+                resourceIds = attributeSet.getResourceIds();
+            }
+            return attributeSet;
+        }
+
+        private Constructor<? extends View> getViewConstructor(Class<? extends View> clazz) throws NoSuchMethodException {
+            Constructor<? extends View> constructor = viewConstructorsByClass.get(clazz);
+            if (constructor == null) {
+                constructor = pickViewConstructor(clazz);
+                viewConstructorsByClass.put(clazz, constructor);
+            }
+            return constructor;
+        }
+
+        private Constructor<? extends View> pickViewConstructor(Class<? extends View> clazz) throws NoSuchMethodException {
+            Constructor<? extends View> contextConstructor = null;
+            Constructor<? extends View> stringConstructor = null;
+            for (Constructor<?> constructor : clazz.getConstructors()) {
+                Class<?>[] parameterTypes = constructor.getParameterTypes();
+                if (parameterTypes.length == 0 || parameterTypes.length > 2 || parameterTypes[0] != Context.class) {
+                    continue;
                 }
-                return ((Constructor<? extends View>) clazz.getConstructor(Context.class, AttributeSet.class)).newInstance(context, attributeSet);
-            } catch (NoSuchMethodException e) {
-                try {
-                    return ((Constructor<? extends View>) clazz.getConstructor(Context.class)).newInstance(context);
-                } catch (NoSuchMethodException e1) {
-                    return ((Constructor<? extends View>) clazz.getConstructor(Context.class, String.class)).newInstance(context, "");
+                // noinspection unchecked
+                Constructor<? extends View> viewConstructor = (Constructor<? extends View>) constructor;
+                if (parameterTypes.length == 1) {
+                    contextConstructor = viewConstructor;
+                } else if (parameterTypes[1] == AttributeSet.class) {
+                    return viewConstructor;
+                } else if (parameterTypes[1] == String.class) {
+                    stringConstructor = viewConstructor;
                 }
             }
+            if (contextConstructor != null) {
+                return contextConstructor;
+            }
+            if (stringConstructor != null) {
+                return stringConstructor;
+            }
+            throw new NoSuchMethodException(clazz.getName() + ".<init>(android.content.Context, android.util.AttributeSet)");
+        }
+
+        private Constructor<? extends Fragment> getFragmentConstructor(String className) throws NoSuchMethodException {
+            Class<? extends Fragment> clazz = loadFragmentClass(className);
+            Constructor<? extends Fragment> constructor = fragmentConstructorsByClass.get(clazz);
+            if (constructor == null) {
+                constructor = clazz.getConstructor();
+                fragmentConstructorsByClass.put(clazz, constructor);
+            }
+            return constructor;
         }
 
         private Class<? extends View> pickViewClass() {
@@ -257,11 +401,19 @@ public class ViewLoader extends XmlLoader {
         }
 
         private Class loadClass(String className) {
+            // misses are remembered too, since most tags are only found after a few of the package prefixes
+            if (classesByName.containsKey(className)) {
+                return classesByName.get(className);
+            }
+
+            Class<?> clazz;
             try {
-                return getClass().getClassLoader().loadClass(className);
+                clazz = getClass().getClassLoader().loadClass(className);
             } catch (ClassNotFoundException e) {
-                return null;
+                clazz = null;
             }
+            classesByName.put(className, clazz);
+            return clazz;
         }
 
         private Class<? extends View> loadViewClass(String className) {
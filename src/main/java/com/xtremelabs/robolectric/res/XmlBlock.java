@@ -0,0 +1,161 @@
+package com.xtremelabs.robolectric.res;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An xml resource file compiled into a flat array of ints and a pool of strings, much like aapt compiles xml into the
+ * buffer behind Android's XmlBlock, so {@link XmlFileLoader.XmlResourceParserImpl} pulls events by advancing an index
+ * instead of walking a DOM. It never changes once compiled, so every parser for the file shares it.
+ * <p/>
+ * Each node is a record, in document order:
+ * <ul>
+ * <li>{@link #START_TAG}, name, namespace, index of the matching end tag record, attribute count, then the namespace,
+ * name and value of each attribute</li>
+ * <li>{@link #END_TAG}, index of the matching start tag record</li>
+ * <li>{@link #TEXT} or {@link #IGNORED_TEXT}, value</li>
+ * </ul>
+ * Names, namespaces and values are indexes into {@link #strings}, or {@link #NO_STRING} for null. Whitespace-only text
+ * and CDATA sections are kept as ignored text: parsers never stop at them, but they're still part of an element's text.
+ * Comments and processing instructions are left out.
+ */
+final class XmlBlock {
+    static final int START_TAG = 0;
+    static final int END_TAG = 1;
+    static final int TEXT = 2;
+    static final int IGNORED_TEXT = 3;
+
+    static final int NO_STRING = -1;
+    static final int ROOT_ELEMENT = 0;
+
+    final int[] data;
+    final String[] strings;
+
+    private XmlBlock(int[] data, String[] strings) {
+        this.data = data;
+        this.strings = strings;
+    }
+
+    static XmlBlock compile(Document document) {
+        Compiler compiler = new Compiler();
+        compiler.compileElement(document.getDocumentElement());
+        return new XmlBlock(Arrays.copyOf(compiler.data, compiler.size), compiler.strings.toArray(new String[compiler.strings.size()]));
+    }
+
+    /**
+     * @return whether the text is made of nothing but whitespace, and isn't empty
+     */
+    static boolean isWhitespace(String text) {
+        if (text.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    String getString(int index) {
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    /**
+     * @return the index of the record after the one at {@code position}
+     */
+    int nextRecord(int position) {
+        if (data[position] == START_TAG) {
+            return position + 5 + 3 * data[position + 4];
+        }
+        return position + 2;
+    }
+
+    /**
+     * @return all the text inside the element, including whitespace and CDATA sections, like
+     *         {@link Node#getTextContent()}
+     */
+    String getTextContent(int startTag) {
+        int endTag = data[startTag + 3];
+        StringBuilder text = new StringBuilder();
+        for (int position = nextRecord(startTag); position < endTag; position = nextRecord(position)) {
+            if (data[position] == TEXT || data[position] == IGNORED_TEXT) {
+                text.append(strings[data[position + 1]]);
+            }
+        }
+        return text.toString();
+    }
+
+    private static class Compiler {
+        private int[] data = new int[256];
+        private int size;
+        private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+
+        void compileElement(Node element) {
+            NamedNodeMap attributes = element.getAttributes();
+            int startTag = size;
+            add(START_TAG);
+            add(indexOf(element.getNodeName()));
+            add(indexOf(element.getNamespaceURI()));
+            add(0); // the end tag, filled in below
+            add(attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attribute = attributes.item(i);
+                add(indexOf(attribute.getNamespaceURI()));
+                add(indexOf(attribute.getNodeName()));
+                add(indexOf(attribute.getNodeValue()));
+            }
+
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                switch (child.getNodeType()) {
+                    case Node.ELEMENT_NODE:
+                        compileElement(child);
+                        break;
+                    case Node.TEXT_NODE:
+                        add(isWhitespace(child.getNodeValue()) ? IGNORED_TEXT : TEXT);
+                        add(indexOf(child.getNodeValue()));
+                        break;
+                    case Node.CDATA_SECTION_NODE:
+                        add(IGNORED_TEXT);
+                        add(indexOf(child.getNodeValue()));
+                        break;
+                }
+            }
+
+            data[startTag + 3] = size;
+            add(END_TAG);
+            add(startTag);
+        }
+
+        private void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        private int indexOf(String string) {
+            if (string == null) {
+                return NO_STRING;
+            }
+            Integer index = stringIndexes.get(string);
+            if (index == null) {
+                index = strings.size();
+                stringIndexes.put(string, index);
+                strings.add(string);
+            }
+            return index;
+        }
+    }
+}
@@ -10,8 +10,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.res.Resources;
@@ -31,8 +29,8 @@ import android.content.res.XmlResourceParser;
  */
 public class XmlFileLoader extends XmlLoader {
 	
-	private Map<String, Document> mXmlDocuments = 
-			new HashMap<String, Document>();
+	private Map<String, XmlBlock> mXmlBlocks = 
+			new HashMap<String, XmlBlock>();
 	
 	/**
 	 * All the parser features currently supported by Android. 
@@ -73,8 +71,11 @@ public class XmlFileLoader extends XmlLoader {
 	protected void processResourceXml(
 			File xmlFile, Document document, boolean isSystem)
 					throws Exception {
-		mXmlDocuments.put(
-				"xml/" + xmlFile.getName().replace(".xml", ""), document);
+		// the documents themselves are let go of, only the compact
+		// compiled form is kept
+		mXmlBlocks.put(
+				"xml/" + xmlFile.getName().replace(".xml", ""),
+				XmlBlock.compile(document));
 	}
 
  
@@ -83,20 +84,20 @@ public class XmlFileLoader extends XmlLoader {
 	}
 	
 	public XmlResourceParser getXml(String key) {
-		Document document = mXmlDocuments.get(key);
-		if (document == null) {
+		XmlBlock block = mXmlBlocks.get(key);
+		if (block == null) {
 			return null;
 		}
-        return new XmlResourceParserImpl(document);
+        return new XmlResourceParserImpl(block);
 	}
 
 	/**
 	 * Concrete implementation of the {@link XmlResourceParser}.
 	 * 
 	 * <p>Clients expects a pull parser while the resource loader
-	 * initialise this object with a {@link Document}. 
-	 * This implementation navigates the dom and emulates a pull
-	 * parser by raising all the opportune events.
+	 * reads a {@link Document}. The document is compiled into an
+	 * {@link XmlBlock} and this implementation raises the opportune
+	 * events by moving from one of its records to the next.
 	 * 
 	 * <p>Note that the original android implementation is based on
 	 * a set of native methods calls. Here those methods are
@@ -107,8 +108,9 @@ public class XmlFileLoader extends XmlLoader {
 	final class XmlResourceParserImpl
 			implements XmlResourceParser {
 
-        private final Document document;
-        private Node currentNode;
+        private final XmlBlock block;
+        // the record of the current node in the block, or -1
+        private int position = -1;
         
         private boolean mStarted = false;
         private boolean mDecNextDepth = false;
@@ -116,7 +118,11 @@ public class XmlFileLoader extends XmlLoader {
         private int mEventType = START_DOCUMENT;
         
         XmlResourceParserImpl(Document document) {
-        	this.document = document;
+        	this(XmlBlock.compile(document));
+        }
+
+        XmlResourceParserImpl(XmlBlock block) {
+        	this.block = block;
         }
         
         public void setFeature(String name, boolean state)
@@ -199,10 +205,32 @@ public class XmlFileLoader extends XmlLoader {
         }
         
         public String getText() {
-        	if (currentNode == null) {
+        	if (position == -1) {
         		return "";
         	}
-        	return currentNode.getTextContent();
+        	int element = getCurrentElement();
+        	if (element == -1) {
+        		return block.getString(block.data[position + 1]);
+        	}
+        	return block.getTextContent(element);
+        }
+
+        /**
+         * @return the start tag record of the current element, or -1
+         * 		if the parser isn't on an element
+         */
+        private int getCurrentElement() {
+        	if (position == -1) {
+        		return -1;
+        	}
+        	switch (block.data[position]) {
+        		case XmlBlock.START_TAG:
+        			return position;
+        		case XmlBlock.END_TAG:
+        			return block.data[position + 1];
+        		default:
+        			return -1;
+        	}
         }
         
         public int getLineNumber() {
@@ -221,7 +249,7 @@ public class XmlFileLoader extends XmlLoader {
             if (text == null) {
             	return false;
             }
-            return text.split("\\s").length == 0;
+            return XmlBlock.isWhitespace(text);
         }
         
         public boolean isWhitespace()
@@ -248,10 +276,11 @@ public class XmlFileLoader extends XmlLoader {
         }
         
         public String getNamespace() {
-        	if (currentNode == null) {
+        	int element = getCurrentElement();
+        	if (element == -1) {
         		return "";
         	}
-        	String namespace = currentNode.getNamespaceURI();
+        	String namespace = block.getString(block.data[element + 2]);
         	if (namespace == null) {
         		return "";
         	}
@@ -259,46 +288,60 @@ public class XmlFileLoader extends XmlLoader {
         }
         
         public String getName() {
-        	if (currentNode == null) {
+        	if (position == -1) {
         		return "";
         	}
-            return currentNode.getNodeName();
+        	int element = getCurrentElement();
+        	if (element == -1) {
+        		// what the dom used to call text nodes
+        		return "#text";
+        	}
+            return block.getString(block.data[element + 1]);
         }
         
-        Node getAttributeAt(int index) {
-        	if (currentNode == null) {
-        		throw new IndexOutOfBoundsException(String.valueOf(index));
-        	}
-        	NamedNodeMap map = currentNode.getAttributes();
-        	if (index >= map.getLength()) {
+        /**
+         * @return the index in the block where the attribute's
+         * 		namespace, name and value are
+         */
+        int getAttributeAt(int index) {
+        	int element = getCurrentElement();
+        	if (element == -1 || index < 0
+        			|| index >= block.data[element + 4]) {
         		throw new IndexOutOfBoundsException(String.valueOf(index));
         	}
-        	return map.item(index);
+        	return element + 5 + 3 * index;
         }
         
-        Node getAttribute(String namespace, String name) {
-        	if (currentNode == null) {
-        		return null;
+        /**
+         * @return the index of the attribute, or -1 if there's no
+         * 		such attribute
+         */
+        int getAttribute(String namespace, String name) {
+        	int element = getCurrentElement();
+        	if (element == -1) {
+        		return -1;
         	}
-        	NamedNodeMap map = currentNode.getAttributes();
-        	// XXX(msama): getNamedItemNS does not work.
+        	// XXX(msama): matching on the namespace does not work.
         	// 		This is an hack to make this implementation working.
-        	//		return map.getNamedItemNS(namespace, name);
-        	return map.getNamedItem(name);
+        	int attributeCount = block.data[element + 4];
+        	for (int i = 0; i < attributeCount; i++) {
+        		int attr = element + 5 + 3 * i;
+        		if (name.equals(block.getString(block.data[attr + 1]))) {
+        			return i;
+        		}
+        	}
+        	return -1;
         }
         
         public String getAttributeNamespace(int index) {
-        	Node attr = getAttributeAt(index);
-        	if (attr == null) {
-        		return null;
-        	}
-        	return attr.getNamespaceURI();
+        	int attr = getAttributeAt(index);
+        	return block.getString(block.data[attr]);
         }
         
         public String getAttributeName(int index) {
         	try {
-        		Node attr = getAttributeAt(index);
-        		return attr.getNodeName();
+        		int attr = getAttributeAt(index);
+        		return block.getString(block.data[attr + 1]);
         	} catch(IndexOutOfBoundsException ex) {
         		return null;
         	}
@@ -315,14 +358,16 @@ public class XmlFileLoader extends XmlLoader {
         }
         
         public int getAttributeCount() {
-            if (currentNode == null) {
+        	int element = getCurrentElement();
+            if (element == -1) {
             	return -1;
             }
-            return currentNode.getAttributes().getLength();
+            return block.data[element + 4];
         }
         
         public String getAttributeValue(int index) {
-        	return getAttributeAt(index).getNodeValue();
+        	int attr = getAttributeAt(index);
+        	return block.getString(block.data[attr + 2]);
         }
         
         public String getAttributeType(int index) {
@@ -341,11 +386,11 @@ public class XmlFileLoader extends XmlLoader {
         }
         
         public String getAttributeValue(String namespace, String name) {
-        	Node attr = getAttribute(namespace, name);
-        	if (attr == null) {
+        	int index = getAttribute(namespace, name);
+        	if (index == -1) {
         		return null;
         	}
-        	return attr.getNodeValue();
+        	return getAttributeValue(index);
         }
         
         public int next() throws XmlPullParserException,IOException {       	
@@ -409,7 +454,11 @@ public class XmlFileLoader extends XmlLoader {
         					"END_DOCUMENT should not be found here.");
         		}
         		case(END_TAG): {
-        			return navigateToNextNode(currentNode);
+        			if (block.data[position + 1] == XmlBlock.ROOT_ELEMENT) {
+        				position = -1;
+        				return END_DOCUMENT;
+        			}
+        			return moveToNextEvent(block.nextRecord(position));
         		}
         		case(IGNORABLE_WHITESPACE): {
         			throw new IllegalArgumentException(
@@ -420,21 +469,14 @@ public class XmlFileLoader extends XmlLoader {
         					"PROCESSING_INSTRUCTION");
         		}
         		case(START_DOCUMENT): {
-        			currentNode = document.getDocumentElement();
+        			position = XmlBlock.ROOT_ELEMENT;
         			return START_TAG;
         		}
         		case(START_TAG): {
-        			if (currentNode.hasChildNodes()) {
-        				// The node has children, navigate down
-        				return processNextNodeType(
-        						currentNode.getFirstChild());
-        			} else {
-        				// The node has no children
-        				return END_TAG;
-        			}
+        			return moveToNextEvent(block.nextRecord(position));
         		}
         		case(TEXT): {
-        			return navigateToNextNode(currentNode);
+        			return moveToNextEvent(block.nextRecord(position));
         		}
         		default : {
         			// This can only happen if mEventType is
@@ -446,91 +488,25 @@ public class XmlFileLoader extends XmlLoader {
 
         }
         
-        /*protected*/ int processNextNodeType(Node node)
-        		throws XmlPullParserException {
-        	switch (node.getNodeType()) {
-				case(Node.ATTRIBUTE_NODE): {
-					throw new IllegalArgumentException("ATTRIBUTE_NODE");
-				}
-				case(Node.CDATA_SECTION_NODE): {
-					return navigateToNextNode(node);
-				}
-				case(Node.COMMENT_NODE): {
-					return navigateToNextNode(node);
-				}
-				case(Node.DOCUMENT_FRAGMENT_NODE): {
-					throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
-				}
-				case(Node.DOCUMENT_NODE): {
-					throw new IllegalArgumentException("DOCUMENT_NODE");
-				}
-				case(Node.DOCUMENT_TYPE_NODE): {
-					throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-				}
-				case(Node.ELEMENT_NODE): {
-					currentNode = node;
-					return START_TAG;
-				}
-				case(Node.ENTITY_NODE): {
-					throw new IllegalArgumentException("ENTITY_NODE");
-				}
-				case(Node.ENTITY_REFERENCE_NODE): {
-					throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
-				}
-				case(Node.NOTATION_NODE): {
-					throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-				}
-				case(Node.PROCESSING_INSTRUCTION_NODE): {
-					throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-				}
-				case(Node.TEXT_NODE): {
-					if (isWhitespace(node.getNodeValue())) {
-						// Skip whitespaces
-						return navigateToNextNode(node);
-					} else {
-						currentNode = node;
-						return TEXT;
-					}
-				}
-				default : {
-					throw new RuntimeException(
-							"Roboletric -> Unknown node type: " + 
-							node.getNodeType() + ".");
-				}
-        	}
-        }
-        
         /**
-         * Navigate to the next node after a node and all of his 
-         * children have been explored.
+         * Moves to the first record from the given one that raises an
+         * event, skipping whitespace and CDATA sections.
          * 
-         * <p>If the node has unexplored siblings navigate to the
-         * next sibling. Otherwise return to its parent.
-         * 
-         * @param node the node which was just explored.
-         * @return {@link XmlPullParserException#START_TAG} if the given 
-         * 		node has siblings, {@link XmlPullParserException#END_TAG}
-         * 		if the node has no unexplored siblings or 
-         * 		{@link XmlPullParserException#END_DOCUMENT} if the explored
-         * 		was the root document.
-         * @throws XmlPullParserException if the parser fails to 
-         * 		parse the next node.
+         * @return the event raised by that record
          */
-        int navigateToNextNode(Node node)
-        		throws XmlPullParserException {
-			Node nextNode = node.getNextSibling();
-			if (nextNode != null) {
-				// Move to the next siblings
-				return processNextNodeType(nextNode);
-			} else {
-				// Goes back to the parent
-				if (document.getDocumentElement().equals(node)) {
-					currentNode = null;
-	        		return END_DOCUMENT;
-	        	}
-				currentNode = node.getParentNode();
-				return END_TAG;
-			}
+        private int moveToNextEvent(int record) {
+        	while (block.data[record] == XmlBlock.IGNORED_TEXT) {
+        		record = block.nextRecord(record);
+        	}
+        	position = record;
+        	switch (block.data[record]) {
+        		case XmlBlock.START_TAG:
+        			return START_TAG;
+        		case XmlBlock.END_TAG:
+        			return END_TAG;
+        		default:
+        			return TEXT;
+        	}
         }
         
         public void require(int type, String namespace, String name)
@@ -586,12 +562,12 @@ public class XmlFileLoader extends XmlLoader {
     
         public int getAttributeListValue(String namespace, String attribute,
                 String[] options, int defaultValue) {
-    		Node attr = getAttribute(namespace, attribute);
+    		String attr = getAttributeValue(namespace, attribute);
     		if (attr == null) {
     			return 0;
     		}
     		List<String> optList = Arrays.asList(options);
-        	int index = optList.indexOf(attr.getNodeValue());
+        	int index = optList.indexOf(attr);
         	if (index == -1) {
         		return defaultValue;
         	}
@@ -600,11 +576,11 @@ public class XmlFileLoader extends XmlLoader {
         
         public boolean getAttributeBooleanValue(String namespace, String attribute,
                 boolean defaultValue) {
-        	Node attr = getAttribute(namespace, attribute);
+        	String attr = getAttributeValue(namespace, attribute);
         	if (attr == null) {
         		return defaultValue;
         	}
-        	return Boolean.parseBoolean(attr.getNodeValue());
+        	return Boolean.parseBoolean(attr);
         }
         
         public int getAttributeResourceValue(String namespace, String attribute,
@@ -614,12 +590,12 @@ public class XmlFileLoader extends XmlLoader {
         
         public int getAttributeIntValue(String namespace, String attribute,
                 int defaultValue) {
-        	Node attr = getAttribute(namespace, attribute);
+        	String attr = getAttributeValue(namespace, attribute);
         	if (attr == null) {
         		return defaultValue;
         	}
         	try {
-        		return Integer.parseInt(attr.getNodeValue());
+        		return Integer.parseInt(attr);
         	} catch(NumberFormatException ex) {
         		return defaultValue;
         	}
@@ -637,12 +613,12 @@ public class XmlFileLoader extends XmlLoader {
         
         public float getAttributeFloatValue(String namespace, String attribute,
                 float defaultValue) {
-        	Node attr = getAttribute(namespace, attribute);
+        	String attr = getAttributeValue(namespace, attribute);
         	if (attr == null) {
         		return defaultValue;
         	}
         	try {
-	        	return Float.parseFloat(attr.getNodeValue());
+	        	return Float.parseFloat(attr);
 	        } catch(NumberFormatException ex) {
 	        	return defaultValue;
 	    	}
@@ -705,19 +681,19 @@ public class XmlFileLoader extends XmlLoader {
         }
 
         public String getIdAttribute() {
-        	Node attr = getAttribute(null, "id");
+        	String attr = getAttributeValue(null, "id");
         	if (attr == null) {
         		return null;
         	}
-        	return attr.getNodeValue();
+        	return attr;
         }
         
         public String getClassAttribute() {
-        	Node attr = getAttribute(null, "class");
+        	String attr = getAttributeValue(null, "class");
         	if (attr == null) {
         		return null;
         	}
-        	return attr.getNodeValue();
+        	return attr;
         }
 
         public int getIdAttributeResourceValue(int defaultValue) {
@@ -733,12 +709,12 @@ public class XmlFileLoader extends XmlLoader {
         }
 
         public int getStyleAttribute() {
-        	Node attr = getAttribute(null, "style");
+        	String attr = getAttributeValue(null, "style");
         	if (attr == null) {
         		return 0;
         	}
         	try {
-        		return Integer.parseInt(attr.getNodeValue());
+        		return Integer.parseInt(attr);
         	} catch (NumberFormatException ex) {
         		return 0;
         	}
@@ -11,16 +11,17 @@ import javax.xml.xpath.XPathFactory;
 import java.io.File;
 
 public abstract class XpathResourceXmlLoader extends XmlLoader {
-    private String expression;
+    private static final XPathFactory X_PATH_FACTORY = XPathFactory.newInstance();
+
+    private final XPathExpression expression;
 
     public XpathResourceXmlLoader(ResourceExtractor resourceExtractor, String expression) {
         super(resourceExtractor);
-        this.expression = expression;
+        this.expression = compile(expression);
     }
 
     @Override protected void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception {
-        XPathExpression stringsXPath = XPathFactory.newInstance().newXPath().compile(expression);
-        NodeList nodes = (NodeList) stringsXPath.evaluate(document, XPathConstants.NODESET);
+        NodeList nodes = (NodeList) expression.evaluate(document, XPathConstants.NODESET);
         for (int i = 0; i < nodes.getLength(); i++) {
             Node node = nodes.item(i);
             String name = node.getAttributes().getNamedItem("name").getNodeValue();
@@ -29,4 +30,18 @@ public abstract class XpathResourceXmlLoader extends XmlLoader {
     }
 
     protected abstract void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException;
+
+    /**
+     * Loaders compile their expressions up front instead of for every file or node they process. The expressions
+     * aren't thread safe, but neither are the loaders.
+     */
+    static XPathExpression compile(String expression) {
+        try {
+            synchronized (X_PATH_FACTORY) {
+                return X_PATH_FACTORY.newXPath().compile(expression);
+            }
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -5,13 +5,10 @@ import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 
 import java.sql.Clob;
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Simulates an Android Cursor object, by wrapping a JDBC ResultSet.
@@ -20,6 +17,8 @@ import java.util.Map;
 public class ShadowSQLiteCursor extends ShadowAbstractCursor {
 
     private ResultSet resultSet;
+    // the rows, one column at a time, instead of the rows map
+    private Column[] columns;
     
     
     /**
@@ -100,63 +99,43 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
     @Implementation
     public byte[] getBlob(int columnIndex) {
     	checkPosition();
-        return (byte[]) this.currentRow.get(getColumnNames()[columnIndex]);
+        return (byte[]) columns[columnIndex].getObject(currentRowNumber);
     }
 
     @Implementation
     public String getString(int columnIndex) {
         checkPosition();
-        Object value = this.currentRow.get(getColumnNames()[columnIndex]);
-        if (value instanceof Clob) {
-            try {
-                return ((Clob) value).getSubString(1, (int)((Clob) value).length());
-            } catch (SQLException x) {
-                throw new RuntimeException(x);
-            }
-        } else {
-            return (String)value;
-        }
+        return columns[columnIndex].getString(currentRowNumber);
     }
 	
 	@Implementation
 	public short getShort(int columnIndex) {
 		checkPosition();
-		Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Short(o.toString());
+		return (short) columns[columnIndex].getLong(currentRowNumber);
 	}
 	
     @Implementation
     public int getInt(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Integer(o.toString());
+    	return (int) columns[columnIndex].getLong(currentRowNumber);
     }
 
     @Implementation
     public long getLong(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Long(o.toString());
+    	return columns[columnIndex].getLong(currentRowNumber);
     }
 
     @Implementation
     public float getFloat(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Float(o.toString());
-        
+    	return (float) columns[columnIndex].getDouble(currentRowNumber);
     }
 
     @Implementation
     public double getDouble(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-    	return new Double(o.toString());
+    	return columns[columnIndex].getDouble(currentRowNumber);
     }
     
     private void checkPosition() {
@@ -174,8 +153,7 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
         try {
             resultSet.close();
             resultSet = null;
-            rows = null;
-            currentRow = null;
+            columns = null;
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in close", e);
         }
@@ -188,16 +166,27 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
 
     @Implementation
     public boolean isNull(int columnIndex) {
-        Object o = this.currentRow.get(getColumnNames()[columnIndex]);
-        return o == null;
+        checkPosition();
+        return columns[columnIndex].isNull(currentRowNumber);
+    }
+
+    /**
+     * The rows live in the columns rather than the rows map.
+     */
+    @Override
+    protected void setPosition(int pos) {
+        currentRowNumber = pos;
     }
 
     /**
      * Allows test cases access to the underlying JDBC ResultSet, for use in
-     * assertions.
+     * assertions. The cursor has already read all of its rows.
      *
      * @return the result set
+     * @deprecated the result set comes from a statement the database keeps for its next query with the same SQL, and
+     *             running that query closes it, so it may already be closed; use the cursor's own getters instead
      */
+    @Deprecated
     public ResultSet getResultSet() {
         return resultSet;
     }
@@ -207,44 +196,38 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
      * assertions. Available even if cl
      *
      * @return the result set
+     * @deprecated like {@link #getResultSet()}, the result set may already be closed; use
+     *             {@link #getColumnNames()} instead
      */
+    @Deprecated
     public ResultSet getResultSetMetaData() {
         return resultSet;
     }    
     
     /**
-     * loads a row's values
-     * @param rs
-     * @return
-     * @throws SQLException
+     * Reads every row of the result set into the columns, since Android caches results in the WindowedCursor
+     * to allow moveToPrevious() to function and ResultSets may be TYPE_FORWARD_ONLY.
      */
-    private Map<String,Object> fillRowValues(ResultSet rs) throws SQLException {
-    	Map<String,Object> row = new HashMap<String,Object>();
-    	for (String s : getColumnNames()) {
-			  row.put(s, rs.getObject(s));
-    	}
-    	return row;
-    }
-    private void fillRows(String sql, Connection connection) throws SQLException {
-    	//ResultSets in SQLite\Android are only TYPE_FORWARD_ONLY. Android caches results in the WindowedCursor to allow moveToPrevious() to function.
-    	//Robolectric will have to cache the results too. In the rows map.
-    	Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        ResultSet rs = statement.executeQuery(sql);
+    private void fillColumns(ResultSet rs) throws SQLException {
+        columns = new Column[columnNameArray.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column();
+        }
+
         int count = 0;
-        if (rs.next()) {  
-        	     do {
-        	    	Map<String,Object> row = fillRowValues(rs);
-         	    	rows.put(count, row);
-        	    	count++;
-        	     } while (rs.next());  
-        	 } else {  
-        		 rs.close(); 
-        	 } 
-        
+        while (rs.next()) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].add(count, rs.getObject(i + 1));
+            }
+            count++;
+        }
         rowCount = count;
-        
     }
-    
+
+    /**
+     * @param sql the query the result set came from; the rows are read from the result set itself, so the query
+     *            doesn't run again
+     */
     public void setResultSet(ResultSet result, String sql) {
         this.resultSet = result;
         rowCount = 0;
@@ -253,10 +236,184 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
         if (resultSet != null) {
         	cacheColumnNames(resultSet);
         	try {
-        		fillRows(sql, result.getStatement().getConnection());
+        		fillColumns(resultSet);
 			} catch (SQLException e) {
 			    throw new RuntimeException("SQL exception in setResultSet", e);
 			}
         }
     }
+
+    /**
+     * One column's values, in a long[] or double[] as long as they're all integers or all floating point, so the
+     * getters don't have to parse them, and in an Object[] otherwise. Nulls are kept in a bitmap.
+     */
+    private static class Column {
+        private static final int ALL_NULL = 0;
+        private static final int LONGS = 1;
+        private static final int DOUBLES = 2;
+        private static final int OBJECTS = 3;
+
+        private int type = ALL_NULL;
+        private long[] longs;
+        private double[] doubles;
+        private Object[] objects;
+        private long[] nulls = new long[1];
+        private int size;
+
+        void add(int row, Object value) {
+            if (value instanceof Clob) {
+                // read it while the result set is still open
+                try {
+                    value = ((Clob) value).getSubString(1, (int) ((Clob) value).length());
+                } catch (SQLException x) {
+                    throw new RuntimeException(x);
+                }
+            }
+
+            ensureCapacity(row + 1);
+            size = row + 1;
+            if (value == null) {
+                nulls[row >> 6] |= 1L << row;
+                return;
+            }
+
+            int valueType = typeOf(value);
+            if (type == ALL_NULL) {
+                allocate(valueType);
+            } else if (type != valueType && type != OBJECTS) {
+                convertToObjects();
+            }
+
+            switch (type) {
+                case LONGS:
+                    longs[row] = ((Number) value).longValue();
+                    break;
+                case DOUBLES:
+                    doubles[row] = toDouble((Number) value);
+                    break;
+                default:
+                    objects[row] = value;
+            }
+        }
+
+        boolean isNull(int row) {
+            return (nulls[row >> 6] & (1L << row)) != 0;
+        }
+
+        long getLong(int row) {
+            if (isNull(row)) {
+                return 0;
+            }
+            switch (type) {
+                case LONGS:
+                    return longs[row];
+                case DOUBLES:
+                    return (long) doubles[row];
+                default:
+                    return Long.parseLong(objects[row].toString());
+            }
+        }
+
+        double getDouble(int row) {
+            if (isNull(row)) {
+                return 0;
+            }
+            switch (type) {
+                case LONGS:
+                    return longs[row];
+                case DOUBLES:
+                    return doubles[row];
+                default:
+                    return Double.parseDouble(objects[row].toString());
+            }
+        }
+
+        String getString(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            switch (type) {
+                case LONGS:
+                    return String.valueOf(longs[row]);
+                case DOUBLES:
+                    return String.valueOf(doubles[row]);
+                default:
+                    Object value = objects[row];
+                    return value instanceof Number ? value.toString() : (String) value;
+            }
+        }
+
+        Object getObject(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            switch (type) {
+                case LONGS:
+                    return longs[row];
+                case DOUBLES:
+                    return doubles[row];
+                default:
+                    return objects[row];
+            }
+        }
+
+        private static int typeOf(Object value) {
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return LONGS;
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return DOUBLES;
+            }
+            return OBJECTS;
+        }
+
+        private static double toDouble(Number value) {
+            // a float's double value would show digits that were never stored, e.g. 0.1f as 0.10000000149011612
+            return value instanceof Float ? Double.parseDouble(value.toString()) : value.doubleValue();
+        }
+
+        private void allocate(int valueType) {
+            type = valueType;
+            int capacity = nulls.length * 64;
+            switch (type) {
+                case LONGS:
+                    longs = new long[capacity];
+                    break;
+                case DOUBLES:
+                    doubles = new double[capacity];
+                    break;
+                default:
+                    objects = new Object[capacity];
+            }
+        }
+
+        private void convertToObjects() {
+            Object[] values = new Object[nulls.length * 64];
+            for (int row = 0; row < size - 1; row++) {
+                values[row] = getObject(row);
+            }
+            longs = null;
+            doubles = null;
+            objects = values;
+            type = OBJECTS;
+        }
+
+        private void ensureCapacity(int rowCount) {
+            int capacity = nulls.length * 64;
+            if (rowCount <= capacity) {
+                return;
+            }
+            int newCapacity = capacity * 2;
+            nulls = Arrays.copyOf(nulls, newCapacity / 64);
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, newCapacity);
+            }
+            if (doubles != null) {
+                doubles = Arrays.copyOf(doubles, newCapacity);
+            }
+            if (objects != null) {
+                objects = Arrays.copyOf(objects, newCapacity);
+            }
+        }
+    }
 }
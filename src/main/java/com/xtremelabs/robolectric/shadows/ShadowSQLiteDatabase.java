@@ -9,6 +9,9 @@ import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
 import com.xtremelabs.robolectric.util.DatabaseConfig;
+import com.xtremelabs.robolectric.util.DatabaseConnectionRegistry;
+import com.xtremelabs.robolectric.util.DatabaseConnectionRegistry.SharedConnection;
+import com.xtremelabs.robolectric.util.PreparedStatementCache;
 import com.xtremelabs.robolectric.util.SQLite.SQLStringAndBindings;
 
 import java.sql.Connection;
@@ -16,7 +19,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.WeakHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -25,23 +30,33 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 import static com.xtremelabs.robolectric.util.SQLite.buildDeleteString;
 import static com.xtremelabs.robolectric.util.SQLite.buildInsertString;
 import static com.xtremelabs.robolectric.util.SQLite.buildUpdateString;
-import static com.xtremelabs.robolectric.util.SQLite.buildWhereClause;
+import static com.xtremelabs.robolectric.util.SQLite.checkWhereArgs;
 
 /**
  * Shadow for {@code SQLiteDatabase} that simulates the movement of a {@code Cursor} through database tables.
  * Implemented as a wrapper around an embedded SQL database, accessed via JDBC.  The JDBC connection is
  * made available to test cases for use in fixture setup and assertions.
+ * <p/>
+ * Each path is its own in-memory database, shared by everything that has it open; see
+ * {@link DatabaseConnectionRegistry}.
  */
 @Implements(SQLiteDatabase.class)
 public class ShadowSQLiteDatabase  {
 	@RealObject	SQLiteDatabase realSQLiteDatabase;
-    private static Connection connection;
+    private String path;
+    private SharedConnection sharedConnection;
+    private boolean createdOnOpen;
+    private Connection connection;
+    private PreparedStatementCache statementCache;
     private final ReentrantLock mLock = new ReentrantLock(true);
     private boolean mLockingEnabled = true;
     private WeakHashMap<SQLiteClosable, Object> mPrograms;
     private boolean inTransaction = false;
     private boolean transactionSuccess = false;
     private boolean throwOnInsert;
+    // built and scrubbed insert SQL, by conflict algorithm, table and columns
+    private final Map<String, String> insertSql = new HashMap<String, String>();
+    private boolean batchInsertsInTransactions;
 
     @Implementation
     public void setLockingEnabled(boolean lockingEnabled) {
@@ -62,10 +77,42 @@ public class ShadowSQLiteDatabase  {
         this.throwOnInsert = throwOnInsert;
     }
 
+    /**
+     * Lets inserts inside a transaction be queued up and written as one JDBC batch for each run of inserts into the
+     * same table with the same columns. The batch is written before anything else is done with the database at this
+     * path, including running compiled statements, and when the transaction ends successfully. Since queued rows
+     * haven't been written yet, inserting one returns 0 instead of its row id, and a constraint it violates is only
+     * reported by whatever writes the batch. Meant for bulk-loading fixtures.
+     */
+    public void setBatchInsertsInTransactions(boolean batchInsertsInTransactions) {
+        this.batchInsertsInTransactions = batchInsertsInTransactions;
+    }
+
     @Implementation
     public static SQLiteDatabase openDatabase(String path, SQLiteDatabase.CursorFactory factory, int flags) {
-     	connection = DatabaseConfig.getMemoryConnection();
-        return newInstanceOf(SQLiteDatabase.class);
+        SQLiteDatabase database = newInstanceOf(SQLiteDatabase.class);
+        shadowOf(database).open(path);
+        return database;
+    }
+
+    @Implementation
+    public static SQLiteDatabase create(SQLiteDatabase.CursorFactory factory) {
+        return openDatabase(DatabaseConnectionRegistry.MEMORY_DB_PATH, factory, SQLiteDatabase.CREATE_IF_NECESSARY);
+    }
+
+    private void open(String path) {
+        this.path = path;
+        sharedConnection = DatabaseConnectionRegistry.open(path);
+        createdOnOpen = sharedConnection.getOpenCount() == 1;
+        connection = sharedConnection.getConnection();
+        statementCache = sharedConnection.getStatementCache();
+    }
+
+    /**
+     * Closes every database left open, so each test starts with empty ones.
+     */
+    public static void reset() {
+        DatabaseConnectionRegistry.reset();
     }
     
     @Implementation
@@ -103,14 +150,20 @@ public class ShadowSQLiteDatabase  {
             ContentValues initialValues, int conflictAlgorithm) throws android.database.SQLException{
 
         try {
-            SQLStringAndBindings sqlInsertString = buildInsertString(table, initialValues, conflictAlgorithm);
-            PreparedStatement insert = connection.prepareStatement(sqlInsertString.sql, Statement.RETURN_GENERATED_KEYS);
-            Iterator<Object> columns = sqlInsertString.columnValues.iterator();
-            int i = 1;
-            long result = -1;
-            while (columns.hasNext()) {
-                insert.setObject(i++, columns.next());
+            Object[] columnValues = new Object[initialValues.size()];
+            String sql = getInsertSql(table, initialValues, conflictAlgorithm, columnValues);
+
+            if (batchInsertsInTransactions && inTransaction) {
+                PreparedStatement insert = sharedConnection.prepareBatchedInsert(sql);
+                bindArgs(insert, 1, columnValues);
+                insert.addBatch();
+                return 0;
             }
+            writePendingInserts();
+
+            PreparedStatement insert = statementCache.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            long result = -1;
+            bindArgs(insert, 1, columnValues);
             insert.executeUpdate();
             ResultSet resultSet = insert.getGeneratedKeys();
             if (resultSet.next()) {
@@ -123,23 +176,57 @@ public class ShadowSQLiteDatabase  {
         }
     }
 
+    /**
+     * @param columnValues filled in with the values, in the order of the columns in the SQL
+     * @return the SQL for inserting {@code values}, built and scrubbed only the first time their columns are inserted
+     */
+    private String getInsertSql(String table, ContentValues values, int conflictAlgorithm, Object[] columnValues) throws SQLException {
+        StringBuilder key = new StringBuilder().append(conflictAlgorithm).append(' ').append(table).append('(');
+        int i = 0;
+        for (Entry<String, Object> entry : values.valueSet()) {
+            key.append(entry.getKey()).append(',');
+            columnValues[i++] = entry.getValue();
+        }
+
+        String sql = insertSql.get(key.toString());
+        if (sql == null) {
+            // valueSet() iterates in the same order every time, so the SQL's columns match the key's
+            sql = buildInsertString(table, values, conflictAlgorithm).sql;
+            insertSql.put(key.toString(), sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Writes the inserts batched on this database's connection, by this or any other {@code SQLiteDatabase} open at
+     * the same path.
+     */
+    void writePendingInserts() throws SQLException {
+        if (sharedConnection != null) {
+            sharedConnection.writePendingInserts();
+        }
+    }
+
     @Implementation
     public Cursor query(boolean distinct, String table, String[] columns,
                         String selection, String[] selectionArgs, String groupBy,
                         String having, String orderBy, String limit) {
 
-        String where = selection;
         if (selection != null && selectionArgs != null) {
-            where = buildWhereClause(selection, selectionArgs);
+            checkWhereArgs(selection, selectionArgs);
         }
 
         String sql = SQLiteQueryBuilder.buildQueryString(distinct, table,
-                columns, where, groupBy, having, orderBy, limit);
+                columns, selection, groupBy, having, orderBy, limit);
 
         ResultSet resultSet;
         try {
-            Statement statement = connection.createStatement(DatabaseConfig.getResultSetType(), ResultSet.CONCUR_READ_ONLY);
-            resultSet = statement.executeQuery(sql);
+            writePendingInserts();
+            PreparedStatement statement = statementCache.prepareQuery(sql);
+            if (selection != null) {
+                bindArgs(statement, 1, selectionArgs);
+            }
+            resultSet = statement.executeQuery();
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in query", e);
         }
@@ -165,14 +252,17 @@ public class ShadowSQLiteDatabase  {
 
     @Implementation
     public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
-        SQLStringAndBindings sqlUpdateString = buildUpdateString(table, values, whereClause, whereArgs);
+        if (whereClause != null && whereArgs != null) {
+            checkWhereArgs(whereClause, whereArgs);
+        }
+        SQLStringAndBindings sqlUpdateString = buildUpdateString(table, values, whereClause, null);
 
         try {
-            PreparedStatement statement = connection.prepareStatement(sqlUpdateString.sql);
-            Iterator<Object> columns = sqlUpdateString.columnValues.iterator();
-            int i = 1;
-            while (columns.hasNext()) {
-                statement.setObject(i++, columns.next());
+            writePendingInserts();
+            PreparedStatement statement = statementCache.prepareStatement(sqlUpdateString.sql, Statement.NO_GENERATED_KEYS);
+            bindArgs(statement, 1, sqlUpdateString.columnValues.toArray());
+            if (whereClause != null) {
+                bindArgs(statement, sqlUpdateString.columnValues.size() + 1, whereArgs);
             }
 
             return statement.executeUpdate();
@@ -183,10 +273,18 @@ public class ShadowSQLiteDatabase  {
 
     @Implementation
     public int delete(String table, String whereClause, String[] whereArgs) {
-        String sql = buildDeleteString(table, whereClause, whereArgs);
+        if (whereClause != null && whereArgs != null) {
+            checkWhereArgs(whereClause, whereArgs);
+        }
+        String sql = buildDeleteString(table, whereClause, null);
 
         try {
-            return connection.prepareStatement(sql).executeUpdate();
+            writePendingInserts();
+            PreparedStatement statement = statementCache.prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+            if (whereClause != null) {
+                bindArgs(statement, 1, whereArgs);
+            }
+            return statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in delete", e);
         }
@@ -199,8 +297,14 @@ public class ShadowSQLiteDatabase  {
         }
 
         try {
+            writePendingInserts();
         	String scrubbedSql= DatabaseConfig.getScrubSQL(sql);
-            connection.createStatement().execute(scrubbedSql);
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(scrubbedSql);
+            } finally {
+                statement.close();
+            }
         } catch (java.sql.SQLException e) {
             android.database.SQLException ase = new android.database.SQLException();
             ase.initCause(e);
@@ -250,29 +354,23 @@ public class ShadowSQLiteDatabase  {
     
     @Implementation
     public Cursor rawQueryWithFactory (SQLiteDatabase.CursorFactory cursorFactory, String sql, String[] selectionArgs, String editTable) {
-       	String sqlBody = sql;
         if (sql != null) {
-        	sqlBody = buildWhereClause(sql, selectionArgs);
+        	checkWhereArgs(sql, selectionArgs);
         }
     	
         ResultSet resultSet;
         try {
-          	SQLiteStatement stmt = compileStatement(sql);
-          	
-          	 int numArgs = selectionArgs == null ? 0
-                     : selectionArgs.length;
-             for (int i = 0; i < numArgs; i++) {
-            		stmt.bindString(i + 1, selectionArgs[i]);
-             }
-          
-              resultSet = Robolectric.shadowOf(stmt).getStatement().executeQuery();
+            writePendingInserts();
+            PreparedStatement statement = statementCache.prepareQuery(DatabaseConfig.getScrubSQL(sql));
+            bindArgs(statement, 1, selectionArgs);
+            resultSet = statement.executeQuery();
           } catch (SQLException e) {
               throw new RuntimeException("SQL exception in query", e);
           }
           //TODO: assert rawquery with args returns actual values
           
         SQLiteCursor cursor = (SQLiteCursor) cursorFactory.newCursor(null, null, null, null);
-        shadowOf(cursor).setResultSet(resultSet, sqlBody);
+        shadowOf(cursor).setResultSet(resultSet, sql);
         return cursor;
     }
     
@@ -281,19 +379,38 @@ public class ShadowSQLiteDatabase  {
         return (connection != null);
     }
 
+    @Implementation
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Closes this database. Its tables are only dropped once nothing else has the same path open.
+     */
     @Implementation
     public void close() {
         if (!isOpen()) {
             return;
         }
         try {
-            connection.close();
-            connection = null;
+            DatabaseConnectionRegistry.release(sharedConnection);
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in close", e);
+        } finally {
+            sharedConnection = null;
+            statementCache = null;
+            connection = null;
         }
     }
 
+    /**
+     * @return whether the database was empty when this {@code SQLiteDatabase} opened it, because nothing else had its
+     *         path open
+     */
+    public boolean wasCreatedOnOpen() {
+        return createdOnOpen;
+    }
+
 	@Implementation
 	public void beginTransaction() {
 		try {
@@ -320,8 +437,16 @@ public class ShadowSQLiteDatabase  {
 		try {
 			if (transactionSuccess) {
 				transactionSuccess = false;
+				try {
+					writePendingInserts();
+				} catch (SQLException e) {
+					connection.rollback();
+					connection.setAutoCommit(true);
+					throw e;
+				}
 				connection.commit();
 			} else {
+				sharedConnection.discardPendingInserts();
 				connection.rollback();
 			}
 			connection.setAutoCommit(true);
@@ -345,13 +470,30 @@ public class ShadowSQLiteDatabase  {
 		return transactionSuccess; 
 	}
 
+    /**
+     * Binds {@code args}, in order, to the parameters of {@code statement} starting at {@code firstIndex}.
+     */
+    private static void bindArgs(PreparedStatement statement, int firstIndex, Object[] args) throws SQLException {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(firstIndex + i, args[i]);
+        }
+    }
+
     /**
      * Allows test cases access to the underlying JDBC connection, for use in
-     * setup or assertions.
+     * setup or assertions. Any inserts still waiting to be batched are written first.
      *
      * @return the connection
      */
     public Connection getConnection() {
+        try {
+            writePendingInserts();
+        } catch (SQLException e) {
+            throw new RuntimeException("SQL exception in getConnection", e);
+        }
         return connection;
     }
     
@@ -7,23 +7,55 @@ import android.database.sqlite.SQLiteOpenHelper;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
+import com.xtremelabs.robolectric.util.DatabaseConfig;
+import com.xtremelabs.robolectric.util.DatabaseConfig.DatabaseSnapshot;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 
 /**
  * Shadow for {@code SQLiteOpenHelper}.  Provides basic support for retrieving
  * databases and partially implements the subclass contract.  (Currently,
- * support for {@code #onUpgrade} is missing).
+ * support for {@code #onUpgrade} is missing).  Helpers with the same name
+ * share a database, and {@code #onCreate} is only called for a database
+ * that didn't already exist.
+ * <p/>
+ * With {@link #setUseSnapshots(boolean)}, the database each helper class
+ * creates for a version is snapshotted right after its first {@code #onCreate},
+ * and later databases of that class and version are restored from the
+ * snapshot instead of running {@code #onCreate} again.
  */
 @Implements(SQLiteOpenHelper.class)
 public class ShadowSQLiteOpenHelper {
 
+    private static final Map<String, DatabaseSnapshot> snapshots = new HashMap<String, DatabaseSnapshot>();
+    private static boolean useSnapshots;
+
     @RealObject private SQLiteOpenHelper realHelper;
-    private static SQLiteDatabase database;
+    private String name;
+    private int version;
+    private SQLiteDatabase database;
 
     public void __constructor__(Context context, String name, CursorFactory factory, int version) {
-        if (database != null) {
-            database.close();
+        this.name = name;
+        this.version = version;
+    }
+
+    /**
+     * Only turn this on if your helpers' {@code onCreate} does nothing but create
+     * tables and insert rows, since it won't be called for most databases.
+     * Turning it off forgets the snapshots taken so far.
+     */
+    public static void setUseSnapshots(boolean useSnapshots) {
+        synchronized (snapshots) {
+            ShadowSQLiteOpenHelper.useSnapshots = useSnapshots;
+            if (!useSnapshots) {
+                snapshots.clear();
+            }
         }
-        database = null;
     }
 
     @Implementation
@@ -37,8 +69,10 @@ public class ShadowSQLiteOpenHelper {
     @Implementation
     public synchronized SQLiteDatabase getReadableDatabase() {
         if (database == null) {
-            database = SQLiteDatabase.openDatabase("path", null, 0);
-            realHelper.onCreate(database);
+            database = SQLiteDatabase.openDatabase(name, null, 0);
+            if (shadowOf(database).wasCreatedOnOpen()) {
+                create(database);
+            }
         }
 
         realHelper.onOpen(database);
@@ -48,11 +82,41 @@ public class ShadowSQLiteOpenHelper {
     @Implementation
     public synchronized SQLiteDatabase getWritableDatabase() {
         if (database == null) {
-            database = SQLiteDatabase.openDatabase("path", null, 0);
-            realHelper.onCreate(database);
+            database = SQLiteDatabase.openDatabase(name, null, 0);
+            if (shadowOf(database).wasCreatedOnOpen()) {
+                create(database);
+            }
         }
 
         realHelper.onOpen(database);
         return database;
     }
+
+    private void create(SQLiteDatabase database) {
+        if (!useSnapshots || !DatabaseConfig.canTakeSnapshots()) {
+            realHelper.onCreate(database);
+            return;
+        }
+
+        String key = realHelper.getClass().getName() + ":" + version + ":" + DatabaseConfig.getDatabaseMap().getClass().getName();
+        DatabaseSnapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(key);
+        }
+        try {
+            if (snapshot != null) {
+                snapshot.restoreInto(shadowOf(database).getConnection());
+                return;
+            }
+            realHelper.onCreate(database);
+            snapshot = DatabaseConfig.takeSnapshot(shadowOf(database).getConnection());
+        } catch (SQLException e) {
+            throw new RuntimeException("SQL exception in onCreate", e);
+        }
+        synchronized (snapshots) {
+            if (useSnapshots) {
+                snapshots.put(key, snapshot);
+            }
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.xtremelabs.robolectric.shadows;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteStatement;
+import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 
@@ -24,6 +25,7 @@ public class ShadowSQLiteStatement extends ShadowSQLiteProgram {
             throw new IllegalStateException("database " + mDatabase.getPath() + " already closed");
         }
         try {
+            writePendingInserts();
             actualDBstatement.execute();
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -33,6 +35,7 @@ public class ShadowSQLiteStatement extends ShadowSQLiteProgram {
     @Implementation
     public long executeInsert() {
         try {
+            writePendingInserts();
             actualDBstatement.executeUpdate();
             ResultSet resultSet = actualDBstatement.getGeneratedKeys();
 
@@ -50,6 +53,7 @@ public class ShadowSQLiteStatement extends ShadowSQLiteProgram {
     public long simpleQueryForLong() {
         ResultSet rs;
         try {
+            writePendingInserts();
             rs = actualDBstatement.executeQuery();
             rs.next();
             return rs.getLong(1);
@@ -63,6 +67,7 @@ public class ShadowSQLiteStatement extends ShadowSQLiteProgram {
     public String simpleQueryForString() {
         ResultSet rs;
         try {
+            writePendingInserts();
             rs = actualDBstatement.executeQuery();
             rs.next();
             return rs.getString(1);
@@ -72,6 +77,13 @@ public class ShadowSQLiteStatement extends ShadowSQLiteProgram {
         }
     }
     
+    /**
+     * Rows batched by the database may be what this statement is about to read or conflict with.
+     */
+    private void writePendingInserts() throws SQLException {
+        Robolectric.shadowOf(mDatabase).writePendingInserts();
+    }
+
     private void handleException(SQLException e)  {
         if (e.getMessage().contains("No data is available")) {
             //if the query returns zero rows
@@ -6,7 +6,11 @@ import com.xtremelabs.robolectric.res.AttrResourceLoader;
 import com.xtremelabs.robolectric.res.ResourceExtractor;
 import com.xtremelabs.robolectric.util.I18nException;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class TestAttributeSet implements AttributeSet {
@@ -16,6 +20,13 @@ public class TestAttributeSet implements AttributeSet {
     private Class<? extends View> viewClass;
     private boolean isSystem = false;
 
+    // false while the attributes are shared with whoever handed them in, until put() copies them
+    private boolean ownsAttributes = true;
+    // worked out when an attribute is first read, unless they're handed in, and again when put() adds a key
+    private AttributeNames attributeNames;
+    // worked out when a resource id is first read, unless they're handed in, and again after put()
+    private ResourceIds resourceIds;
+
     /**
      * Names of attributes to be validated for i18n-safe values.
      */
@@ -30,9 +41,31 @@ public class TestAttributeSet implements AttributeSet {
         this.attributes = new HashMap<String, String>();
     }
 
+    /**
+     * @param attributes copied, so changing the map afterwards doesn't change the attribute set; use {@link #put}
+     */
     public TestAttributeSet(Map<String, String> attributes, ResourceExtractor resourceExtractor,
                             AttrResourceLoader attrResourceLoader, Class<? extends View> viewClass, boolean isSystem) {
+        // keeps the caller's order, which decides which attribute is found when several namespaces use the same name
+        this(new LinkedHashMap<String, String>(attributes), null, null, resourceExtractor, attrResourceLoader, viewClass, isSystem);
+        this.ownsAttributes = true;
+    }
+
+    /**
+     * Shares {@code attributes} with the caller rather than copying it, until {@link #put} is called, so sets made
+     * over and over for the same layout node don't copy the same map or look the same names and ids up again. The
+     * caller mustn't change the map afterwards.
+     *
+     * @param attributeNames from {@link #getAttributeNames()} of another set made from the same map, or null
+     * @param resourceIds    from {@link #getResourceIds()} of another set made from the same map, or null
+     */
+    public TestAttributeSet(Map<String, String> attributes, AttributeNames attributeNames, ResourceIds resourceIds,
+                            ResourceExtractor resourceExtractor, AttrResourceLoader attrResourceLoader,
+                            Class<? extends View> viewClass, boolean isSystem) {
         this.attributes = attributes;
+        this.ownsAttributes = false;
+        this.attributeNames = attributeNames;
+        this.resourceIds = resourceIds;
         this.resourceExtractor = resourceExtractor;
         this.attrResourceLoader = attrResourceLoader;
         this.viewClass = viewClass;
@@ -53,10 +86,37 @@ public class TestAttributeSet implements AttributeSet {
     }
 
     public TestAttributeSet put(String name, String value) {
-        attributes.put(name, value);
+        if (!ownsAttributes) {
+            attributes = new LinkedHashMap<String, String>(attributes);
+            ownsAttributes = true;
+        }
+        if (attributes.put(name, value) == null) {
+            attributeNames = null;
+        }
+        resourceIds = null;
         return this;
     }
 
+    /**
+     * @return the names of the attributes, split from their namespaces, to hand to another set made from the same map
+     */
+    public AttributeNames getAttributeNames() {
+        if (attributeNames == null) {
+            attributeNames = new AttributeNames(attributes.keySet());
+        }
+        return attributeNames;
+    }
+
+    /**
+     * @return the resource ids the attributes refer to, to hand to another set made from the same map
+     */
+    public ResourceIds getResourceIds() {
+        if (resourceIds == null) {
+            resourceIds = new ResourceIds(this);
+        }
+        return resourceIds;
+    }
+
     @Override
     public boolean getAttributeBooleanValue(String namespace, String attribute, boolean defaultValue) {
         String value = getAttributeValueInMap(namespace, attribute);
@@ -143,10 +203,10 @@ public class TestAttributeSet implements AttributeSet {
 
     @Override
     public int getAttributeResourceValue(String namespace, String attribute, int defaultValue) {
-        String value = getAttributeValueInMap(namespace, attribute);
-        Integer resourceId = defaultValue;
-        if (value != null) {
-            resourceId = resourceExtractor.getResourceId(value);
+        String key = findKey(namespace, attribute);
+        Integer resourceId = null;
+        if (key != null && getValue(key) != null) {
+            resourceId = getResourceId(key);
         }
         return resourceId == null ? defaultValue : resourceId;
     }
@@ -207,23 +267,88 @@ public class TestAttributeSet implements AttributeSet {
     }
 
     private String getAttributeValueInMap(String namespace, String attribute) {
-        String value = null;
-        for (String key : attributes.keySet()) {
-            String[] mappedKeys = {null, key};
-            if (key.contains(":")) {
-                mappedKeys = key.split(":");
-            }
+        String key = findKey(namespace, attribute);
+        return key == null ? null : getValue(key);
+    }
 
-            if (mappedKeys[1].equals(attribute) && (
-                    namespace == null || !namespace.equals("android") ||
-                            (namespace.equals("android") && namespace.equals(mappedKeys[0])))) {
-                value = attributes.get(key);
-                break;
+    private String findKey(String namespace, String attribute) {
+        AttributeName[] names = getAttributeNames().byName.get(attribute);
+        if (names == null) {
+            return null;
+        }
+        for (AttributeName name : names) {
+            if (namespace == null || !namespace.equals("android") || namespace.equals(name.namespace)) {
+                return name.key;
             }
         }
+        return null;
+    }
+
+    private String getValue(String key) {
+        String value = attributes.get(key);
         if (value != null && isSystem && value.startsWith("@+id")) {
             value = value.replace("@+id", "@+android:id");
         }
         return value;
     }
+
+    private Integer getResourceId(String key) {
+        return getResourceIds().byKey.get(key);
+    }
+
+    /**
+     * The names of a set of attributes without their namespaces. They don't change, so sets made from the same
+     * attributes can share them.
+     */
+    public static class AttributeNames {
+        private final Map<String, AttributeName[]> byName = new HashMap<String, AttributeName[]>();
+
+        private AttributeNames(Collection<String> keys) {
+            Map<String, List<AttributeName>> namesByName = new HashMap<String, List<AttributeName>>();
+            // in the keys' order, which decides which one is found when several namespaces use the same name
+            for (String key : keys) {
+                String[] mappedKeys = {null, key};
+                if (key.contains(":")) {
+                    mappedKeys = key.split(":");
+                }
+
+                List<AttributeName> names = namesByName.get(mappedKeys[1]);
+                if (names == null) {
+                    names = new ArrayList<AttributeName>(1);
+                    namesByName.put(mappedKeys[1], names);
+                }
+                names.add(new AttributeName(key, mappedKeys[0]));
+            }
+            for (Map.Entry<String, List<AttributeName>> entry : namesByName.entrySet()) {
+                byName.put(entry.getKey(), entry.getValue().toArray(new AttributeName[entry.getValue().size()]));
+            }
+        }
+    }
+
+    /**
+     * The resource ids that a set of attributes' values refer to, by key. They're all looked up at once and don't
+     * change, so sets made from the same attributes can share them.
+     */
+    public static class ResourceIds {
+        private final Map<String, Integer> byKey = new HashMap<String, Integer>();
+
+        private ResourceIds(TestAttributeSet attributeSet) {
+            for (String key : attributeSet.attributes.keySet()) {
+                String value = attributeSet.getValue(key);
+                if (value != null) {
+                    byKey.put(key, attributeSet.resourceExtractor.getResourceId(value));
+                }
+            }
+        }
+    }
+
+    private static class AttributeName {
+        private final String key;
+        private final String namespace;
+
+        private AttributeName(String key, String namespace) {
+            this.key = key;
+            this.namespace = namespace;
+        }
+    }
 }
@@ -93,6 +93,22 @@ public class DatabaseConfig {
         return dbMap.getResultSetType();
     }
 
+    /**
+     * Check if the database in use can be copied with {@link #takeSnapshot(Connection)}.
+     */
+    public static boolean canTakeSnapshots() {
+        if (isMapNull()) throw new NullDatabaseMapException("No database map set!");
+        return dbMap instanceof SnapshotDatabaseMap;
+    }
+
+    /**
+     * Copies everything in the database behind a connection, so it can later be restored into another one.
+     */
+    public static DatabaseSnapshot takeSnapshot(Connection connection) throws SQLException {
+        if (!canTakeSnapshots()) throw new UnsupportedOperationException(dbMap.getClass().getName() + " can't take snapshots");
+        return ((SnapshotDatabaseMap) dbMap).takeSnapshot(connection);
+    }
+
     public interface DatabaseMap {
         String getDriverClassName();
 
@@ -105,6 +121,23 @@ public class DatabaseConfig {
         int getResultSetType();
     }
 
+    /**
+     * A {@code DatabaseMap} for a database that can be copied as a whole.
+     */
+    public interface SnapshotDatabaseMap extends DatabaseMap {
+        DatabaseSnapshot takeSnapshot(Connection connection) throws SQLException;
+    }
+
+    /**
+     * The tables and rows of a database at one point in time.
+     */
+    public interface DatabaseSnapshot {
+        /**
+         * Recreates the tables and rows in an empty database.
+         */
+        void restoreInto(Connection connection) throws SQLException;
+    }
+
     public static class NullDatabaseMapException extends RuntimeException {
         private static final long serialVersionUID = -4580960157495617424L;
 
@@ -0,0 +1,220 @@
+package com.xtremelabs.robolectric.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The in-memory database behind each database path. Like a database file on a device, a path names one database: every
+ * {@code SQLiteDatabase} opened on the same path shares its connection, while different paths are isolated from each
+ * other. The connection is counted once for each open, and is closed, dropping its tables, when the last one is released.
+ * A {@code null} or {@value #MEMORY_DB_PATH} path gets a private database that's never shared, like Android's in-memory
+ * databases.
+ * <p/>
+ * Fresh connections can be created ahead of time with {@link #preCreateConnections(int)}, so that opening a database
+ * doesn't have to wait for the driver to set one up.
+ */
+public class DatabaseConnectionRegistry {
+    /**
+     * The path Android gives in-memory databases, such as the ones from {@code SQLiteDatabase.create()}.
+     */
+    public static final String MEMORY_DB_PATH = ":memory:";
+
+    private static final Map<String, SharedConnection> connectionsByPath = new HashMap<String, SharedConnection>();
+    private static final List<SharedConnection> unnamedConnections = new ArrayList<SharedConnection>();
+    private static final LinkedList<Connection> pooledConnections = new LinkedList<Connection>();
+    private static String pooledConnectionString;
+
+    /**
+     * Opens the database at {@code path}, creating an empty one if nothing else has it open.
+     *
+     * @return the connection, which must be given back to {@link #release(SharedConnection)} once for every open
+     */
+    public static synchronized SharedConnection open(String path) {
+        SharedConnection sharedConnection = isPrivate(path) ? null : connectionsByPath.get(path);
+        if (sharedConnection == null) {
+            sharedConnection = new SharedConnection(path, newConnection());
+            if (isPrivate(path)) {
+                unnamedConnections.add(sharedConnection);
+            } else {
+                connectionsByPath.put(path, sharedConnection);
+            }
+        }
+        sharedConnection.openCount++;
+        return sharedConnection;
+    }
+
+    public static synchronized void release(SharedConnection sharedConnection) throws SQLException {
+        if (sharedConnection.openCount == 0) {
+            return;
+        }
+        if (--sharedConnection.openCount == 0) {
+            forget(sharedConnection);
+            sharedConnection.close();
+        }
+    }
+
+    /**
+     * @return whether a database is open at {@code path}
+     */
+    public static synchronized boolean isOpen(String path) {
+        return connectionsByPath.containsKey(path);
+    }
+
+    /**
+     * Creates fresh connections for the current {@code DatabaseMap} until {@code count} of them are waiting to be used
+     * by databases that haven't been opened yet.
+     */
+    public static synchronized void preCreateConnections(int count) {
+        discardStalePooledConnections();
+        while (pooledConnections.size() < count) {
+            pooledConnections.add(DatabaseConfig.getMemoryConnection());
+        }
+        pooledConnectionString = DatabaseConfig.getDatabaseMap().getConnectionString();
+    }
+
+    /**
+     * Closes every open database, whether or not it's been released. Pre-created connections that were never used are
+     * kept, since they're still empty.
+     */
+    public static synchronized void reset() {
+        List<SharedConnection> open = new ArrayList<SharedConnection>(connectionsByPath.values());
+        open.addAll(unnamedConnections);
+        connectionsByPath.clear();
+        unnamedConnections.clear();
+        for (SharedConnection sharedConnection : open) {
+            sharedConnection.openCount = 0;
+            try {
+                sharedConnection.close();
+            } catch (SQLException ignored) {
+                // it's being thrown away either way
+            }
+        }
+    }
+
+    private static Connection newConnection() {
+        discardStalePooledConnections();
+        if (!pooledConnections.isEmpty()) {
+            return pooledConnections.removeFirst();
+        }
+        return DatabaseConfig.getMemoryConnection();
+    }
+
+    private static void discardStalePooledConnections() {
+        if (pooledConnections.isEmpty() || DatabaseConfig.isMapNull()
+                || DatabaseConfig.getDatabaseMap().getConnectionString().equals(pooledConnectionString)) {
+            return;
+        }
+        // they were made for a different DatabaseMap
+        for (Connection connection : pooledConnections) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // never used
+            }
+        }
+        pooledConnections.clear();
+    }
+
+    private static boolean isPrivate(String path) {
+        return path == null || path.equals(MEMORY_DB_PATH);
+    }
+
+    private static void forget(SharedConnection sharedConnection) {
+        if (isPrivate(sharedConnection.path)) {
+            unnamedConnections.remove(sharedConnection);
+        } else if (connectionsByPath.get(sharedConnection.path) == sharedConnection) {
+            connectionsByPath.remove(sharedConnection.path);
+        }
+    }
+
+    /**
+     * A database's connection, along with the prepared statements cached for it and any inserts batched on it that
+     * haven't been written yet. The batch belongs to the connection rather than to one {@code SQLiteDatabase}, so that
+     * whichever of them uses the connection next writes it first.
+     */
+    public static class SharedConnection {
+        private final String path;
+        private final Connection connection;
+        private final PreparedStatementCache statementCache;
+        private int openCount;
+        private PreparedStatement pendingInserts;
+        private String pendingInsertSql;
+
+        private SharedConnection(String path, Connection connection) {
+            this.path = path;
+            this.connection = connection;
+            this.statementCache = new PreparedStatementCache(connection);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public PreparedStatementCache getStatementCache() {
+            return statementCache;
+        }
+
+        /**
+         * @return how many times the database is open
+         */
+        public int getOpenCount() {
+            synchronized (DatabaseConnectionRegistry.class) {
+                return openCount;
+            }
+        }
+
+        /**
+         * @return the statement to add the next row inserted with {@code sql} to, once the batch for any other insert
+         *         SQL has been written
+         */
+        public PreparedStatement prepareBatchedInsert(String sql) throws SQLException {
+            if (!sql.equals(pendingInsertSql)) {
+                writePendingInserts();
+            }
+            // keep adding to the same statement, since some drivers drop the batch when the cache clears its parameters
+            if (pendingInserts == null) {
+                pendingInserts = statementCache.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                pendingInsertSql = sql;
+            }
+            return pendingInserts;
+        }
+
+        public void writePendingInserts() throws SQLException {
+            if (pendingInserts == null) {
+                return;
+            }
+            PreparedStatement inserts = pendingInserts;
+            pendingInserts = null;
+            pendingInsertSql = null;
+            inserts.executeBatch();
+        }
+
+        public void discardPendingInserts() throws SQLException {
+            if (pendingInserts == null) {
+                return;
+            }
+            PreparedStatement inserts = pendingInserts;
+            pendingInserts = null;
+            pendingInsertSql = null;
+            inserts.clearBatch();
+        }
+
+        private void close() throws SQLException {
+            pendingInserts = null;
+            pendingInsertSql = null;
+            statementCache.clear();
+            connection.close();
+        }
+    }
+}
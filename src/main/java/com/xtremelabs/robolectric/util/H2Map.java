@@ -1,12 +1,16 @@
 package com.xtremelabs.robolectric.util;
 
+import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 
-public class H2Map implements DatabaseConfig.DatabaseMap {
+public class H2Map implements DatabaseConfig.SnapshotDatabaseMap {
 
     @Override
     public String getDriverClassName() {
@@ -72,4 +76,46 @@ public class H2Map implements DatabaseConfig.DatabaseMap {
         return ResultSet.TYPE_SCROLL_INSENSITIVE;
     }
 
+    /**
+     * Has H2 script the database, sequences included, as SQL that can be run as is.
+     */
+    @Override
+    public DatabaseConfig.DatabaseSnapshot takeSnapshot(Connection connection) throws SQLException {
+        List<String> script = new ArrayList<String>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS");
+            while (resultSet.next()) {
+                String sql = resultSet.getString(1);
+                if (!sql.startsWith("--")) {
+                    script.add(sql);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        return new ScriptSnapshot(script.toArray(new String[script.size()]));
+    }
+
+    private static class ScriptSnapshot implements DatabaseConfig.DatabaseSnapshot {
+        private final String[] script;
+
+        ScriptSnapshot(String[] script) {
+            this.script = script;
+        }
+
+        @Override
+        public void restoreInto(Connection connection) throws SQLException {
+            Statement statement = connection.createStatement();
+            try {
+                for (String sql : script) {
+                    statement.addBatch(sql);
+                }
+                statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,102 @@
+package com.xtremelabs.robolectric.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most recently used {@code PreparedStatement}s of one JDBC connection, keyed by their SQL and the options they
+ * were prepared with, so that running the
+ * same parameterized SQL again only binds new values instead of having the database parse and plan it again, much like
+ * the compiled statement cache of Android's {@code SQLiteDatabase}. Statements are closed when they're evicted.
+ * <p/>
+ * A statement handed out by the cache is shared by every caller that uses the same SQL and options, so callers have to
+ * bind all of its parameters and be done with it, including reading any results, before preparing it again.
+ */
+public class PreparedStatementCache {
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    public PreparedStatementCache(Connection connection) {
+        this(connection, DEFAULT_MAX_SIZE);
+    }
+
+    public PreparedStatementCache(Connection connection, final int maxSize) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param sql               the SQL, with a {@code ?} for each parameter
+     * @param autoGeneratedKeys {@code Statement.RETURN_GENERATED_KEYS} or {@code Statement.NO_GENERATED_KEYS}
+     * @return a statement for the SQL with no parameters bound
+     */
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = "statement " + autoGeneratedKeys + " " + sql;
+        PreparedStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql, autoGeneratedKeys);
+            statements.put(key, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    /**
+     * @param sql the query, with a {@code ?} for each parameter
+     * @return a read-only statement for the query, with the result set type of the current {@code DatabaseMap} and no
+     *         parameters bound
+     */
+    public PreparedStatement prepareQuery(String sql) throws SQLException {
+        int resultSetType = DatabaseConfig.getResultSetType();
+        String key = "query " + resultSetType + " " + sql;
+        PreparedStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql, resultSetType, ResultSet.CONCUR_READ_ONLY);
+            statements.put(key, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes and forgets all the statements. The connection stays open.
+     */
+    public void clear() {
+        List<PreparedStatement> toClose = new ArrayList<PreparedStatement>(statements.values());
+        statements.clear();
+        for (PreparedStatement statement : toClose) {
+            closeQuietly(statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // it's being thrown away, and closing the connection will release it anyway
+        }
+    }
+}
@@ -111,12 +111,37 @@ public class SQLite {
      * @return where clause
      */
     public static String buildWhereClause(String selection, String[] selectionArgs) throws SQLiteException {
-        String whereClause = selection;
+        checkWhereArgs(selection, selectionArgs);
+        if (selectionArgs == null) {
+            return selection;
+        }
+
+        StringBuilder whereClause = new StringBuilder(selection.length() + selectionArgs.length * 8);
+        int arg = 0;
+        for (int i = 0; i < selection.length(); i++) {
+            char c = selection.charAt(i);
+            if (c == '?') {
+                whereClause.append('\'').append(selectionArgs[arg++]).append('\'');
+            } else {
+                whereClause.append(c);
+            }
+        }
+        return whereClause.toString();
+    }
+
+    /**
+     * Check that there's a non-null argument for every placeholder in a WHERE clause, for when the arguments are going
+     * to be bound to the placeholders rather than substituted by {@link #buildWhereClause(String, String[])}.
+     *
+     * @param selection     SQL where clause fragment
+     * @param selectionArgs Array of substitutions for args in selection
+     */
+    public static void checkWhereArgs(String selection, String[] selectionArgs) throws SQLiteException {
         int argsNeeded = 0;
         int args = 0;
 
-        for (char c : selection.toCharArray()) {
-            if (c == '?') argsNeeded++;
+        for (int i = 0; i < selection.length(); i++) {
+            if (selection.charAt(i) == '?') argsNeeded++;
         }
         if (selectionArgs != null) {
             for (int x = 0; x < selectionArgs.length; x++) {
@@ -125,14 +150,11 @@ public class SQLite {
                 } else {
                     args++;
                 }
-                whereClause = whereClause.replaceFirst("\\?", "'" + selectionArgs[x] + "'");
             }
         }
         if (argsNeeded != args) {
             throw new SQLiteException("bind or column index out of range: count of selectionArgs does not match count of (?) placeholders for given sql statement!");
         }
-
-        return whereClause;
     }
 
    /**
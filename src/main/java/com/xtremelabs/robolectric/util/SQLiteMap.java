@@ -1,8 +1,13 @@
 package com.xtremelabs.robolectric.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 
-public class SQLiteMap implements DatabaseConfig.DatabaseMap {
+public class SQLiteMap implements DatabaseConfig.SnapshotDatabaseMap {
 
     public String getDriverClassName() {
         return "org.sqlite.JDBC";
@@ -23,4 +28,57 @@ public class SQLiteMap implements DatabaseConfig.DatabaseMap {
     public int getResultSetType() {
         return ResultSet.TYPE_FORWARD_ONLY;
     }
+
+    /**
+     * Copies the database into a temporary file with SQLite's backup API.
+     */
+    public DatabaseConfig.DatabaseSnapshot takeSnapshot(Connection connection) throws SQLException {
+        File file;
+        try {
+            file = File.createTempFile("robolectric-snapshot", ".db");
+        } catch (IOException e) {
+            throw new SQLException("couldn't create a file for the snapshot: " + e.getMessage());
+        }
+        file.deleteOnExit();
+        execute(connection, "backup to " + quote(file.getAbsolutePath()));
+        return new FileSnapshot(file);
+    }
+
+    /**
+     * Quotes a path, which may have quotes in it, for a backup or restore command. The driver parses these itself, only
+     * taking a path that's unquoted or between quotes it doesn't contain, and doesn't unescape doubled quotes.
+     */
+    static String quote(String path) throws SQLException {
+        if (path.indexOf('\'') == -1) {
+            return "'" + path + "'";
+        }
+        if (path.indexOf('"') == -1) {
+            return '"' + path + '"';
+        }
+        if (!path.matches(".*\\s.*")) {
+            return path;
+        }
+        throw new SQLException("can't back up to or restore from a path with spaces and both kinds of quote: " + path);
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static class FileSnapshot implements DatabaseConfig.DatabaseSnapshot {
+        private final File file;
+
+        FileSnapshot(File file) {
+            this.file = file;
+        }
+
+        public void restoreInto(Connection connection) throws SQLException {
+            execute(connection, "restore from " + quote(file.getAbsolutePath()));
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package com.xtremelabs.robolectric;
+
+import com.xtremelabs.robolectric.bytecode.ClassHandler;
+import com.xtremelabs.robolectric.bytecode.RobolectricClassLoader;
+import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.xtremelabs.robolectric.Robolectric.DEFAULT_SDK_VERSION;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class RobolectricTestRunnerLoaderTest {
+    private RobolectricClassLoader realDefaultLoader;
+    private RobolectricClassLoader defaultLoader;
+
+    @Before
+    public void setUp() throws Exception {
+        // so classes added here don't end up instrumented by the loader the other tests run in
+        realDefaultLoader = RobolectricTestRunner.replaceDefaultLoader(null);
+        defaultLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
+        RobolectricTestRunner.setDefaultLoader(defaultLoader);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RobolectricTestRunner.replaceDefaultLoader(realDefaultLoader);
+    }
+
+    @Test
+    public void shouldShareLoadersBetweenRunnersInstrumentingTheSameClasses() throws Exception {
+        assertSame(RobolectricTestRunner.getLoaderInstrumenting("some.package", "some.other.Class"),
+                RobolectricTestRunner.getLoaderInstrumenting("some.other.Class", "some.package"));
+    }
+
+    @Test
+    public void shouldNotShareLoadersBetweenRunnersInstrumentingDifferentClasses() throws Exception {
+        assertNotSame(RobolectricTestRunner.getLoaderInstrumenting("some.package"),
+                RobolectricTestRunner.getLoaderInstrumenting("some.other.package"));
+    }
+
+    @Test
+    public void shouldNotShareLoadersBetweenRunnersForDifferentSdkVersions() throws Exception {
+        assertSame(RobolectricTestRunner.getLoaderInstrumenting(8, ShadowWrangler.getInstance(), "some.package"),
+                RobolectricTestRunner.getLoaderInstrumenting(8, ShadowWrangler.getInstance(), "some.package"));
+        assertNotSame(RobolectricTestRunner.getLoaderInstrumenting(8, ShadowWrangler.getInstance(), "some.package"),
+                RobolectricTestRunner.getLoaderInstrumenting(10, ShadowWrangler.getInstance(), "some.package"));
+    }
+
+    @Test
+    public void shouldNotShareLoadersBetweenRunnersWithDifferentClassHandlers() throws Exception {
+        ClassHandler classHandler = mock(ClassHandler.class);
+
+        assertSame(RobolectricTestRunner.getLoaderInstrumenting(8, classHandler, "some.package"),
+                RobolectricTestRunner.getLoaderInstrumenting(8, classHandler, "some.package"));
+        assertNotSame(RobolectricTestRunner.getLoaderInstrumenting(8, ShadowWrangler.getInstance(), "some.package"),
+                RobolectricTestRunner.getLoaderInstrumenting(8, classHandler, "some.package"));
+    }
+
+    @Test
+    public void shouldShareTheDefaultLoaderBetweenRunnersAddingTheSameClasses() throws Exception {
+        // what WithCustomClassListTestRunner does
+        RobolectricClassLoader first = RobolectricTestRunner.getDefaultLoader();
+        RobolectricTestRunner.addClassOrPackageToInstrument("some.custom.Class");
+        RobolectricClassLoader second = RobolectricTestRunner.getDefaultLoader();
+        RobolectricTestRunner.addClassOrPackageToInstrument("some.custom.Class");
+
+        assertSame(defaultLoader, first);
+        assertSame(defaultLoader, second);
+    }
+
+    @Test
+    public void shouldNotHandOutTheDefaultLoaderForAClassList() throws Exception {
+        RobolectricTestRunner.addClassOrPackageToInstrument("some.custom.Class");
+
+        assertNotSame(defaultLoader, RobolectricTestRunner.getLoaderInstrumenting(DEFAULT_SDK_VERSION, ShadowWrangler.getInstance()));
+        assertNotSame(defaultLoader, RobolectricTestRunner.getLoaderInstrumenting(DEFAULT_SDK_VERSION, ShadowWrangler.getInstance(), "some.custom.Class"));
+    }
+}
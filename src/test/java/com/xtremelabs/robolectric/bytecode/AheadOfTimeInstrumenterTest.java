@@ -0,0 +1,90 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AheadOfTimeInstrumenterTest {
+    private File cacheDirectory;
+    private File jar;
+    private ClassCache classCache;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirectory = new File("target/aot-instrumenter-test-cache");
+        jar = new File("target/aot-instrumenter-test.jar");
+        deleteCacheDirectory();
+        classCache = new ClassCache(cacheDirectory.getPath(), AndroidTranslator.CACHE_VERSION);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteCacheDirectory();
+        jar.delete();
+    }
+
+    @Test
+    public void shouldCacheInstrumentedClassesFromJars() throws Exception {
+        writeJar(Foo.class, ShadowFoo.class);
+        AndroidTranslator androidTranslator = new AndroidTranslator(ShadowWrangler.getInstance(), classCache);
+        androidTranslator.addCustomShadowClass(Foo.class.getName());
+
+        assertEquals(0, new AheadOfTimeInstrumenter(androidTranslator, classCache, 2).instrument(Arrays.asList(jar)));
+
+        ClassCache newClassCache = new ClassCache(cacheDirectory.getPath(), AndroidTranslator.CACHE_VERSION);
+        assertNotNull(newClassCache.getClassBytesFor(Foo.class.getName(), readClassBytes(Foo.class),
+                androidTranslator.getInstrumentingListEntriesFor(Foo.class.getName())));
+        assertNull(newClassCache.getClassBytesFor(ShadowFoo.class.getName(), readClassBytes(ShadowFoo.class),
+                androidTranslator.getInstrumentingListEntriesFor(ShadowFoo.class.getName())));
+    }
+
+    private void writeJar(Class<?>... classes) throws Exception {
+        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (Class<?> clazz : classes) {
+                jarOutputStream.putNextEntry(new JarEntry(clazz.getName().replace('.', '/') + ".class"));
+                jarOutputStream.write(readClassBytes(clazz));
+                jarOutputStream.closeEntry();
+            }
+        } finally {
+            jarOutputStream.close();
+        }
+    }
+
+    private byte[] readClassBytes(Class<?> clazz) throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void deleteCacheDirectory() {
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
+}
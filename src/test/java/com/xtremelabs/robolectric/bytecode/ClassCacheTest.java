@@ -1,124 +1,181 @@
 package com.xtremelabs.robolectric.bytecode;
 
-import org.junit.Assert;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class ClassCacheTest {
+    private static final byte[] ORIGINAL_BYTES = {1, 2, 3};
+    private static final byte[] INSTRUMENTED_BYTES = {4, 5, 6, 7};
+    private static final String LIST_ENTRIES = "+some.;";
 
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirectory = new File("target/class-cache-test");
+        deleteCacheDirectory();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteCacheDirectory();
+    }
 
     @Test
-    public void fixForCorberturaAndSonarCodeCoverage() throws InterruptedException {
-        final ClassCache classCache = new ClassCache("target/test.txt", AndroidTranslator.CACHE_VERSION);
-        
-        // Substitute this LOCK with your monitor (could be you object you are
-        // testing etc.)
-        Thread locker = new Thread() {
-            @Override
-            public void run() {
-                synchronized (classCache) {
-                    try {
-                        Thread.sleep(Long.MAX_VALUE);
-                    } catch (InterruptedException e) {
-                        return;
-                    }
-                }
-            }
-        };
+    public void shouldFindClassesCachedByAnotherInstance() throws Exception {
+        cache(new ClassCache(cacheDirectory.getPath(), 1));
 
-        locker.start();
-
-        TestThreadIsWriting attempt = new TestThreadIsWriting(classCache);
-        
-        try {
-            int timeToWait = 500;
-            locker.join(timeToWait, 0);
-
-            attempt.start();
-            long before = System.currentTimeMillis();
-            attempt.join(timeToWait, 0);
-            long after = System.currentTimeMillis();
-            Assert.assertEquals(false, attempt.ready);
-            Assert.assertEquals(1, (after - before) / timeToWait);
-            locker.interrupt();
-        } finally {
-            
-        }
+        ByteBuffer classBytes = new ClassCache(cacheDirectory.getPath(), 1).getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES);
+        assertArrayEquals(INSTRUMENTED_BYTES, toArray(classBytes));
+    }
+
+    @Test
+    public void shouldNotFindClassesWhoseOriginalBytesChanged() throws Exception {
+        cache(new ClassCache(cacheDirectory.getPath(), 1));
+
+        assertNull(new ClassCache(cacheDirectory.getPath(), 1).getClassBytesFor("some.Class", new byte[]{1, 2, 4}, LIST_ENTRIES));
     }
 
     @Test
-    public void fixForCorberturaAndSonarCodeCoverageTheOtherWayAround() throws InterruptedException {
-        final ClassCache classCache = new ClassCache("target/test.txt", AndroidTranslator.CACHE_VERSION);
-        
-        // Substitute this LOCK with your monitor (could be you object you are
-        // testing etc.)
-        Thread locker = new Thread() {
-            @Override
-            public void run() {
-                synchronized (classCache) {
-                    try {
-                        Thread.sleep(Long.MAX_VALUE);
-                    } catch (InterruptedException e) {
-                        return;
-                    }
-                }
+    public void shouldNotFindClassesCachedWithAnotherVersion() throws Exception {
+        cache(new ClassCache(cacheDirectory.getPath(), 1));
+
+        assertNull(new ClassCache(cacheDirectory.getPath(), 2).getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES));
+    }
+
+    @Test
+    public void shouldNotFindClassesCachedForOtherInstrumentingListEntries() throws Exception {
+        cache(new ClassCache(cacheDirectory.getPath(), 1));
+
+        assertNull(new ClassCache(cacheDirectory.getPath(), 1).getClassBytesFor("some.Class", ORIGINAL_BYTES, ""));
+        assertNull(new ClassCache(cacheDirectory.getPath(), 1).getClassBytesFor("some.Class", ORIGINAL_BYTES, "+some.;+some.Class;"));
+    }
+
+    @Test
+    public void shouldOnlyCacheClassesItWasAskedFor() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory.getPath(), 1);
+        classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES);
+        classCache.finishedLoading("some.Class");
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
+        classCache.addClass("some.OtherClass", INSTRUMENTED_BYTES);
+
+        assertNull(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES));
+    }
+
+    @Test
+    public void shouldCacheClassesMissedOnAnotherThreadInTheMeantime() throws Exception {
+        final ClassCache classCache = new ClassCache(cacheDirectory.getPath(), 1);
+        assertNull(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES));
+
+        // what a ParallelInstrumenter thread does when it fails to instrument the same class
+        Thread otherThread = new Thread() {
+            @Override public void run() {
+                classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES);
+                classCache.finishedLoading("some.Class");
             }
         };
+        otherThread.start();
+        otherThread.join();
 
-        locker.start();
-
-        TestThreadSaveAllClassesToCache attempt = new TestThreadSaveAllClassesToCache(classCache);
-        
-        try {
-            int timeToWait = 500;
-            locker.join(timeToWait, 0);
-
-            attempt.start();
-            long before = System.currentTimeMillis();
-            attempt.join(timeToWait, 0);
-            long after = System.currentTimeMillis();
-            Assert.assertEquals(false, attempt.ready);
-            Assert.assertEquals(1, (after - before) / timeToWait);
-            locker.interrupt();
-                        
-        } finally {
-            
-        }
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
+        classCache.finishedLoading("some.Class");
+        assertArrayEquals(INSTRUMENTED_BYTES, toArray(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES)));
     }
 
-    class TestThreadIsWriting extends  Thread {
-        public boolean ready = false;
-        final ClassCache classCache;
-        
-        
-        public TestThreadIsWriting(ClassCache classCache) {
-            super();
-            this.classCache = classCache;
-        }
+    @Test
+    public void shouldNotLeaveTemporaryFilesBehind() throws Exception {
+        cache(new ClassCache(cacheDirectory.getPath(), 1));
 
+        String[] fileNames = cacheDirectory.list();
+        assertEquals(1, fileNames.length);
+        assertEquals(".class", fileNames[0].substring(fileNames[0].lastIndexOf('.')));
+    }
 
-        @Override
-        public void run() {
-            classCache.isWriting();
-            ready = true;
-        }
-    };
-
-    class TestThreadSaveAllClassesToCache extends  Thread {
-        public boolean ready = false;
-        final ClassCache classCache;
-        
-        
-        public TestThreadSaveAllClassesToCache(ClassCache classCache) {
-            super();
-            this.classCache = classCache;
-        }
+    @Test
+    public void shouldCountHitsAndMisses() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory.getPath(), 1);
+        cache(classCache);
+        classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES);
+        classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES);
+
+        assertEquals(2, classCache.getHitCount());
+        assertEquals(1, classCache.getMissCount());
+    }
 
+    @Test
+    public void shouldDeleteTempFilesLeftBehindByKilledProcesses() throws Exception {
+        cacheDirectory.mkdirs();
+        File staleTempFile = File.createTempFile("stale", ".tmp", cacheDirectory);
+        staleTempFile.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+        File freshTempFile = File.createTempFile("fresh", ".tmp", cacheDirectory);
 
-        @Override
-        public void run() {
-            classCache.saveAllClassesToCache(null, null);
-            ready = true;
-        }
-    };
+        new ClassCache(cacheDirectory.getPath(), 1);
+
+        assertFalse(staleTempFile.exists());
+        assertTrue(freshTempFile.exists());
+    }
+
+    @Test
+    public void shouldDeleteTheLeastRecentlyUsedClassesWhenOverTheMaximumSize() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory.getPath(), 1);
+        cache(classCache);
+        assertNull(classCache.getClassBytesFor("some.OtherClass", new byte[]{8, 9}, LIST_ENTRIES));
+        classCache.addClass("some.OtherClass", INSTRUMENTED_BYTES);
+        File[] classFiles = cacheDirectory.listFiles();
+        assertEquals(2, classFiles.length);
+        long now = System.currentTimeMillis();
+        classFiles[0].setLastModified(now - 3 * 24 * 60 * 60 * 1000);
+        classFiles[1].setLastModified(now - 2 * 24 * 60 * 60 * 1000);
+
+        new ClassCache(cacheDirectory.getPath(), 1, 2 * INSTRUMENTED_BYTES.length);
+        assertEquals(2, cacheDirectory.list().length);
+
+        new ClassCache(cacheDirectory.getPath(), 1, INSTRUMENTED_BYTES.length);
+        assertFalse(classFiles[0].exists());
+        assertTrue(classFiles[1].exists());
+    }
 
+    @Test
+    public void shouldMarkClassesAsUsedWhenTheyreFound() throws Exception {
+        cache(new ClassCache(cacheDirectory.getPath(), 1));
+        File classFile = cacheDirectory.listFiles()[0];
+        long longAgo = System.currentTimeMillis() - 3 * 24 * 60 * 60 * 1000;
+        classFile.setLastModified(longAgo);
+
+        new ClassCache(cacheDirectory.getPath(), 1).getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES);
+
+        assertTrue(classFile.lastModified() > longAgo);
+    }
+
+    private void cache(ClassCache classCache) {
+        assertNull(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, LIST_ENTRIES));
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
+        classCache.finishedLoading("some.Class");
+    }
+
+    private byte[] toArray(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        return bytes;
+    }
+
+    private void deleteCacheDirectory() {
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
 }
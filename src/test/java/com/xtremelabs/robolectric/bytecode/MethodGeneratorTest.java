@@ -5,7 +5,9 @@ import javassist.CtClass;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 
 public class MethodGeneratorTest {
     private ClassPool classPool;
@@ -21,9 +23,15 @@ public class MethodGeneratorTest {
                 ctClass.getDeclaredMethod("substring", new CtClass[]{CtClass.intType}),
                 ctClass, Type.OBJECT, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (__callSite0__ >= 0) {\n" +
+                "if (__callSite0__ == 0) __callSite0__ = com.xtremelabs.robolectric.bytecode.RobolectricInternals.registerCallSite(\n" +
+                "  java.lang.String.class, \"__callSite0__\", \"substring\", new String[] {\"int\"});\n" +
+                "if (com.xtremelabs.robolectric.bytecode.RobolectricInternals.hasShadowImplementation(__callSite0__)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"substring\", this, new String[] {\"int\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  __callSite0__, this, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
+                "}\n" +
+                "}\n" +
                 "return null;\n" +
                 "}\n", methodBody);
     }
@@ -35,9 +43,15 @@ public class MethodGeneratorTest {
                 ctClass.getDeclaredMethod("length"),
                 ctClass, Type.OBJECT, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (__callSite0__ >= 0) {\n" +
+                "if (__callSite0__ == 0) __callSite0__ = com.xtremelabs.robolectric.bytecode.RobolectricInternals.registerCallSite(\n" +
+                "  java.lang.String.class, \"__callSite0__\", \"length\", new String[0]);\n" +
+                "if (com.xtremelabs.robolectric.bytecode.RobolectricInternals.hasShadowImplementation(__callSite0__)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"length\", this, new String[0], new Object[0]);\n" +
+                "  __callSite0__, this, com.xtremelabs.robolectric.bytecode.RobolectricInternals.NO_ARGS);\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
+                "}\n" +
+                "}\n" +
                 "return null;\n" +
                 "}\n", methodBody);
     }
@@ -49,8 +63,14 @@ public class MethodGeneratorTest {
                 ctClass.getDeclaredMethod("wait"),
                 ctClass, Type.VOID, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (__callSite0__ >= 0) {\n" +
+                "if (__callSite0__ == 0) __callSite0__ = com.xtremelabs.robolectric.bytecode.RobolectricInternals.registerCallSite(\n" +
+                "  java.lang.Object.class, \"__callSite0__\", \"wait\", new String[] {\"long\"});\n" +
+                "if (com.xtremelabs.robolectric.bytecode.RobolectricInternals.hasShadowImplementation(__callSite0__)) {\n" +
                 "com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.Object.class, \"wait\", this, new String[] {\"long\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  __callSite0__, this, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "}\n" +
+                "}\n" +
                 "return;\n" +
                 "}\n", methodBody);
     }
@@ -62,13 +82,31 @@ public class MethodGeneratorTest {
                 ctClass.getDeclaredMethod("valueOf", new CtClass[]{CtClass.intType}),
                 ctClass, Type.OBJECT, true, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(java.lang.String.class)) {\n" +
+                "if (__callSite0__ >= 0) {\n" +
+                "if (__callSite0__ == 0) __callSite0__ = com.xtremelabs.robolectric.bytecode.RobolectricInternals.registerCallSite(\n" +
+                "  java.lang.String.class, \"__callSite0__\", \"valueOf\", new String[] {\"int\"});\n" +
+                "if (com.xtremelabs.robolectric.bytecode.RobolectricInternals.hasShadowImplementation(__callSite0__)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"valueOf\", null, new String[] {\"int\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  __callSite0__, null, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
+                "}\n" +
+                "}\n" +
                 "return null;\n" +
                 "}\n", methodBody);
     }
 
+    @Test
+    public void shouldGiveEachMethodItsOwnCallSiteField() throws Exception {
+        CtClass ctClass = classPool.get("java.lang.String");
+        MethodGenerator methodGenerator = new MethodGenerator(ctClass);
+        methodGenerator.generateMethodBody(ctClass.getDeclaredMethod("length"), ctClass, Type.INT, false, false);
+        String methodBody = methodGenerator.generateMethodBody(ctClass.getDeclaredMethod("isEmpty"), ctClass, Type.BOOLEAN, false, false);
+
+        assertThat(methodBody, containsString("hasShadowImplementation(__callSite1__)"));
+        assertEquals(CtClass.intType, ctClass.getDeclaredField("__callSite0__").getType());
+        assertEquals(CtClass.intType, ctClass.getDeclaredField("__callSite1__").getType());
+    }
+
     @Test
     public void shouldGenerateParameterList() throws Exception {
         MethodGenerator methodGenerator = new MethodGenerator(classPool.getCtClass(Object.class.getName()));
@@ -84,9 +122,15 @@ public class MethodGeneratorTest {
                 ctClass.getDeclaredMethod("equals", new CtClass[]{ctClass}),
                 ctClass, Type.BOOLEAN, false, true);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
+                "if (__callSite0__ >= 0) {\n" +
+                "if (__callSite0__ == 0) __callSite0__ = com.xtremelabs.robolectric.bytecode.RobolectricInternals.registerCallSite(\n" +
+                "  java.lang.Object.class, \"__callSite0__\", \"equals\", new String[] {\"java.lang.Object\"});\n" +
+                "if (com.xtremelabs.robolectric.bytecode.RobolectricInternals.hasShadowImplementation(__callSite0__)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.Object.class, \"equals\", this, new String[] {\"java.lang.Object\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  __callSite0__, this, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "if (x != null) return ((java.lang.Boolean) x).booleanValue();\n" +
+                "}\n" +
+                "}\n" +
                 "return super.equals($1);}\n", methodBody);
     }
 }
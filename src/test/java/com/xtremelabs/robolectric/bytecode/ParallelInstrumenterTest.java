@@ -0,0 +1,128 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelInstrumenterTest {
+    private File parallelCacheDirectory;
+    private File serialCacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        parallelCacheDirectory = new File("target/parallel-instrumenter-test-cache");
+        serialCacheDirectory = new File("target/parallel-instrumenter-test-serial-cache");
+        deleteDirectory(parallelCacheDirectory);
+        deleteDirectory(serialCacheDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteDirectory(parallelCacheDirectory);
+        deleteDirectory(serialCacheDirectory);
+    }
+
+    @Test
+    public void shouldInstrumentClassesJustLikeTheyAreInstrumentedAsTheyreLoaded() throws Exception {
+        byte[] originalClassBytes = readClassBytes(Foo.class);
+
+        ClassCache parallelClassCache = new ClassCache(parallelCacheDirectory.getPath(), AndroidTranslator.CACHE_VERSION);
+        ParallelInstrumenter parallelInstrumenter = new ParallelInstrumenter(fooTranslator(parallelClassCache),
+                parallelClassCache, getClass().getClassLoader(), 2);
+        parallelInstrumenter.instrument(Foo.class.getName(), originalClassBytes);
+        assertEquals(0, parallelInstrumenter.finish());
+
+        ClassCache serialClassCache = new ClassCache(serialCacheDirectory.getPath(), AndroidTranslator.CACHE_VERSION);
+        AndroidTranslator serialTranslator = fooTranslator(serialClassCache);
+        String listEntries = serialTranslator.getInstrumentingListEntriesFor(Foo.class.getName());
+        assertNull(serialClassCache.getClassBytesFor(Foo.class.getName(), originalClassBytes, listEntries));
+        serialTranslator.onLoad(newClassPool(), Foo.class.getName());
+        serialClassCache.finishedLoading(Foo.class.getName());
+
+        assertArrayEquals(toArray(serialClassCache.getClassBytesFor(Foo.class.getName(), originalClassBytes, listEntries)),
+                toArray(parallelClassCache.getClassBytesFor(Foo.class.getName(), originalClassBytes, listEntries)));
+    }
+
+    @Test
+    public void shouldLeaveClassesThatFailToInstrumentToBeInstrumentedAsTheyreLoaded() throws Exception {
+        byte[] originalClassBytes = readClassBytes(Foo.class);
+        ClassCache classCache = new ClassCache(parallelCacheDirectory.getPath(), AndroidTranslator.CACHE_VERSION);
+        AndroidTranslator failingTranslator = new AndroidTranslator(ShadowWrangler.getInstance(), classCache) {
+            @Override public void onLoad(ClassPool classPool, String className) throws NotFoundException, CannotCompileException {
+                throw new CannotCompileException("no");
+            }
+        };
+
+        ParallelInstrumenter parallelInstrumenter = new ParallelInstrumenter(failingTranslator, classCache, getClass().getClassLoader(), 2);
+        parallelInstrumenter.instrument(Foo.class.getName(), originalClassBytes);
+        parallelInstrumenter.awaitInstrumentationOf(Foo.class.getName());
+        assertEquals(1, parallelInstrumenter.finish());
+        assertTrue(parallelInstrumenter.getFailures().get(Foo.class.getName()) instanceof CannotCompileException);
+
+        // what RobolectricClassLoader.findClass() does after waiting for it
+        AndroidTranslator fooTranslator = fooTranslator(classCache);
+        String listEntries = fooTranslator.getInstrumentingListEntriesFor(Foo.class.getName());
+        assertNull(classCache.getClassBytesFor(Foo.class.getName(), originalClassBytes, listEntries));
+        fooTranslator.onLoad(newClassPool(), Foo.class.getName());
+        classCache.finishedLoading(Foo.class.getName());
+        assertNotNull(classCache.getClassBytesFor(Foo.class.getName(), originalClassBytes, listEntries));
+    }
+
+    private AndroidTranslator fooTranslator(ClassCache classCache) {
+        AndroidTranslator androidTranslator = new AndroidTranslator(ShadowWrangler.getInstance(), classCache);
+        androidTranslator.addCustomShadowClass(Foo.class.getName());
+        return androidTranslator;
+    }
+
+    private ClassPool newClassPool() {
+        ClassPool classPool = new ClassPool();
+        classPool.appendClassPath(new LoaderClassPath(getClass().getClassLoader()));
+        return classPool;
+    }
+
+    private byte[] readClassBytes(Class<?> clazz) throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private byte[] toArray(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,65 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.WithoutTestDefaultsRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the steady-state cost of dispatching an instrumented call to its shadow. Not run as part of the normal
+ * build; run it by hand with {@code mvn test -Dtest=ShadowWranglerBenchmark}.
+ */
+@RunWith(WithoutTestDefaultsRunner.class)
+public class ShadowWranglerBenchmark {
+    private static final int WARMUP_CALLS = 200000;
+    private static final int MEASURED_CALLS = 2000000;
+
+    @Test
+    public void shadowedMethodDispatch() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        final Foo foo = new Foo("name");
+
+        report("shadowed instance method", new Runnable() {
+            @Override public void run() {
+                foo.getName();
+            }
+        });
+    }
+
+    @Test
+    public void unshadowedMethodDispatch() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        final Foo foo = new Foo("name");
+
+        report("instance method without shadow implementation", new Runnable() {
+            @Override public void run() {
+                foo.findFooById(42);
+            }
+        });
+    }
+
+    @Test
+    public void unboundMethodDispatch() throws Exception {
+        final Foo foo = new Foo("name");
+
+        report("instance method on a class with no shadow bound", new Runnable() {
+            @Override public void run() {
+                foo.findFooById(42);
+            }
+        });
+    }
+
+    private void report(String description, Runnable call) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(description + ": " + (elapsed / MEASURED_CALLS) + " ns/call over " + MEASURED_CALLS + " calls");
+    }
+}
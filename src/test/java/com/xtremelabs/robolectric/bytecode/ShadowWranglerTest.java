@@ -92,6 +92,51 @@ public class ShadowWranglerTest {
         assertEquals("the expected string", foo.toString());
     }
 
+    @Test
+    public void shouldNotUseStaleShadowMethodLookupsAfterRebinding() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        assertThat(new Foo(name).toString(), not(containsString("the expected string")));
+
+        Robolectric.bindShadowClass(WithToString.class);
+        assertEquals("the expected string", new Foo(name).toString());
+    }
+
+    @Test
+    public void shouldCallShadowMethodsBoundAfterTheMethodWasCalledWithoutAShadow() throws Exception {
+        Foo foo = new Foo(name);
+        assertNull(foo.getName());
+
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        assertEquals(name, new Foo(name).getName());
+    }
+
+    @Test
+    public void shouldInvokeFrequentlyCalledShadowMethodsWithoutReflection() throws Exception {
+        Robolectric.bindShadowClass(CallerRecordingShadowFoo.class);
+        Foo foo = new Foo(name);
+        for (int i = 0; i < 100; i++) {
+            foo.getName();
+        }
+
+        assertThat(foo.getName(), containsString(ShadowMethodInvokerGenerator.INVOKER_CLASS_NAME_MARKER));
+    }
+
+    @Test
+    public void shouldInvokeShadowMethodsReflectivelyWhenGeneratedInvokersAreDisabled() throws Exception {
+        Robolectric.bindShadowClass(CallerRecordingShadowFoo.class);
+        ShadowWrangler.getInstance().setUseGeneratedInvokers(false);
+        try {
+            Foo foo = new Foo(name);
+            for (int i = 0; i < 100; i++) {
+                foo.callGetName();
+            }
+
+            assertThat(foo.callGetName(), not(containsString(ShadowMethodInvokerGenerator.INVOKER_CLASS_NAME_MARKER)));
+        } finally {
+            ShadowWrangler.getInstance().setUseGeneratedInvokers(true);
+        }
+    }
+
     @Test
     public void testShadowSelectionSearchesSuperclasses() throws Exception {
         Robolectric.bindShadowClass(ShadowFoo.class);
@@ -109,6 +154,15 @@ public class ShadowWranglerTest {
         assertThat(shadowOf(textFoo), instanceOf(ShadowTextFoo.class));
     }
 
+    @Test
+    public void shouldPickUpMoreSpecificShadowsBoundAfterShadowsWereCreated() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        assertEquals(ShadowFoo.class, Robolectric.shadowOf_(new TextFoo(name)).getClass());
+
+        Robolectric.bindShadowClass(ShadowTextFoo.class);
+        assertEquals(ShadowTextFoo.class, Robolectric.shadowOf_(new TextFoo(name)).getClass());
+    }
+
     @Test
     public void testPrimitiveArrays() throws Exception {
         Class<?> objArrayClass = ShadowWrangler.loadClass("java.lang.Object[]", getClass().getClassLoader());
@@ -229,6 +283,17 @@ public class ShadowWranglerTest {
     public static class ShadowFoo_WithDefaultConstructorAndNoConstructorDelegate {
     }
 
+    @Implements(Foo.class)
+    public static class CallerRecordingShadowFoo {
+        public String getName() {
+            return new Throwable().getStackTrace()[1].getClassName();
+        }
+
+        public String callGetName() {
+            return new Throwable().getStackTrace()[1].getClassName();
+        }
+    }
+
     @Implements(Foo.class)
     public static class ExceptionThrowingShadowFoo {
         @SuppressWarnings({"UnusedDeclaration"})
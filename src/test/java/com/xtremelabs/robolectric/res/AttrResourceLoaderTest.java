@@ -48,6 +48,17 @@ public class AttrResourceLoaderTest {
         assertThat(attrResourceLoader.hasAttributeFor(SubCustomView.class, "xxx", "itemType"), equalTo(true));
     }
 
+    @Test
+    public void shouldFindAttributesLoadedAfterTheyWereLookedFor() throws Exception {
+        AttrResourceLoader attrResourceLoader = new AttrResourceLoader(new ResourceExtractor());
+        assertThat(attrResourceLoader.hasAttributeFor(CustomView.class, "xxx", "itemType"), equalTo(false));
+
+        new DocumentLoader(attrResourceLoader).loadResourceXmlDir(resourceFile("res", "values"));
+
+        assertThat(attrResourceLoader.hasAttributeFor(CustomView.class, "xxx", "itemType"), equalTo(true));
+        assertThat(attrResourceLoader.convertValueToEnum(SubCustomView.class, "xxx", "itemType", "string"), equalTo("1"));
+    }
+
     private class SubCustomView extends CustomView {
         public SubCustomView(Context context, AttributeSet attrs) {
             super(context, attrs);
@@ -9,11 +9,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 public class PluralResourceLoaderTest {
+    private ResourceExtractor resourceExtractor;
     private PluralResourceLoader pluralResourceLoader;
 
     @Before
     public void setUp() throws Exception {
-        ResourceExtractor resourceExtractor = new ResourceExtractor();
+        resourceExtractor = new ResourceExtractor();
         resourceExtractor.addLocalRClass(R.class);
 
         StringResourceLoader stringResourceLoader = new StringResourceLoader(resourceExtractor);
@@ -30,4 +31,13 @@ public class PluralResourceLoaderTest {
         assertThat(pluralResourceLoader.getValue(R.plurals.beer, 2), equalTo("Two beers"));
         assertThat(pluralResourceLoader.getValue(R.plurals.beer, 3), equalTo("%d beers, yay!"));
     }
+
+    @Test
+    public void shouldResolveStringsLoadedByTheSameDocumentLoader() throws Exception {
+        StringResourceLoader stringResourceLoader = new StringResourceLoader(resourceExtractor);
+        PluralResourceLoader pluralResourceLoader = new PluralResourceLoader(resourceExtractor, stringResourceLoader);
+        new DocumentLoader(stringResourceLoader, pluralResourceLoader).loadResourceXmlDir(resourceFile("res", "values"));
+
+        assertThat(pluralResourceLoader.getValue(R.plurals.beer, 0), equalTo("Howdy"));
+    }
 }
@@ -5,8 +5,10 @@ import org.hamcrest.CoreMatchers;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class ResourceExtractorTest {
     private ResourceExtractor resourceExtractor;
@@ -33,4 +35,33 @@ public class ResourceExtractorTest {
     public void shouldHandleNull() throws Exception {
         assertThat(resourceExtractor.getLocalResourceId("@null"), equalTo(0));
     }
+
+    @Test
+    public void shouldFindTheSameIdForEveryFormOfAReference() throws Exception {
+        assertThat(resourceExtractor.getLocalResourceId("@+id/textStyle"), equalTo(R.id.textStyle));
+        assertThat(resourceExtractor.getLocalResourceId("@id/textStyle"), equalTo(R.id.textStyle));
+        assertThat(resourceExtractor.getLocalResourceId("@+id/textStyle"), equalTo(R.id.textStyle));
+        assertThat(resourceExtractor.getResourceId("@+android:id/text1", true), equalTo(android.R.id.text1));
+        assertThat(resourceExtractor.getResourceName(android.R.id.text1), equalTo("android:id/text1"));
+    }
+
+    @Test
+    public void shouldFindIdsFromRClassesAddedAfterTheyWereMissing() throws Exception {
+        ResourceExtractor resourceExtractor = new ResourceExtractor();
+        assertThat(resourceExtractor.getLocalResourceId("@id/textStyle"), CoreMatchers.<Object>nullValue());
+
+        resourceExtractor.addLocalRClass(R.class);
+
+        assertThat(resourceExtractor.getLocalResourceId("@id/textStyle"), equalTo(R.id.textStyle));
+    }
+
+    @Test
+    public void shouldNotAllowTheSameIdTwice() throws Exception {
+        try {
+            resourceExtractor.addSystemRClass(android.R.class);
+            fail("expected an exception");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), containsString("is already defined with name: android:"));
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.xtremelabs.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceIdMapTest {
+    @Test
+    public void shouldKeepEveryIdAsItGrows() throws Exception {
+        ResourceIdMap<String> resourceIdMap = new ResourceIdMap<String>();
+        for (int i = 0; i < 1000; i++) {
+            resourceIdMap.put(0x7f020000 + i, "drawable/" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("drawable/" + i, resourceIdMap.get(0x7f020000 + i));
+        }
+        assertNull(resourceIdMap.get(0x7f030000));
+        assertFalse(resourceIdMap.containsKey(0x7f030000));
+    }
+
+    @Test
+    public void shouldReplaceValues() throws Exception {
+        ResourceIdMap<String> resourceIdMap = new ResourceIdMap<String>();
+        resourceIdMap.put(0x7f020001, "drawable/old");
+        resourceIdMap.put(0x7f020001, "drawable/new");
+
+        assertEquals("drawable/new", resourceIdMap.get(0x7f020001));
+    }
+
+    @Test
+    public void shouldHandleZeroAndNegativeIds() throws Exception {
+        ResourceIdMap<String> resourceIdMap = new ResourceIdMap<String>();
+        assertFalse(resourceIdMap.containsKey(0));
+        resourceIdMap.put(0, "zero");
+        resourceIdMap.put(0x80000001, "negative");
+
+        assertTrue(resourceIdMap.containsKey(0));
+        assertEquals("zero", resourceIdMap.get(0));
+        assertEquals("negative", resourceIdMap.get(0x80000001));
+        int[] ids = resourceIdMap.ids();
+        Arrays.sort(ids);
+        assertArrayEquals(new int[]{0x80000001, 0}, ids);
+    }
+
+    @Test
+    public void shouldForgetEverythingWhenCleared() throws Exception {
+        ResourceIdMap<String> resourceIdMap = new ResourceIdMap<String>();
+        resourceIdMap.put(0, "zero");
+        resourceIdMap.put(0x7f020001, "drawable/icon");
+
+        resourceIdMap.clear();
+
+        assertTrue(resourceIdMap.isEmpty());
+        assertFalse(resourceIdMap.containsKey(0));
+        assertNull(resourceIdMap.get(0x7f020001));
+    }
+}
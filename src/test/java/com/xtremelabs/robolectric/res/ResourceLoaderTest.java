@@ -42,6 +42,49 @@ public class ResourceLoaderTest {
         assertEquals("Local Copy", stringValue);
     }
 
+    @Test
+    public void shouldLoadTheSameResourcesWhenPrefetchingThem() throws Exception {
+        ResourceLoader resourceLoader = new ResourceLoader(DEFAULT_SDK_VERSION, R.class, resourceFile("res"), resourceFile("assets"));
+        resourceLoader.prefetchResources();
+
+        assertEquals("Local Copy", resourceLoader.getStringValue(R.string.copy));
+        assertEquals("Copy", resourceLoader.getStringValue(android.R.string.copy));
+        assertEquals("One beer", resourceLoader.getPluralStringValue(R.plurals.beer, 1));
+        assertNotNull(resourceLoader.getLayoutViewNode("android:layout/simple_spinner_item"));
+        assertNotNull(resourceLoader.getLayoutViewNode("layout/main"));
+    }
+
+    @Test
+    public void shouldRethrowPrefetchFailuresToTheFirstCallerThatNeedsTheResources() throws Exception {
+        ResourceLoader resourceLoader = new ResourceLoader(DEFAULT_SDK_VERSION, R.class, new File("no/such/res"), resourceFile("assets"));
+        resourceLoader.prefetchResources();
+
+        try {
+            resourceLoader.getStringValue(R.string.copy);
+            fail("expected the prefetcher's exception");
+        } catch (RuntimeException e) {
+            // as thrown by the prefetcher, rather than wrapped by the loader
+            assertTrue(e.getMessage().startsWith("Couldn't find value resource directory"));
+        }
+    }
+
+    @Test
+    public void shouldSwitchBetweenQualifiedAndDefaultValues() throws Exception {
+        ResourceLoader resourceLoader = new ResourceLoader(DEFAULT_SDK_VERSION, R.class, resourceFile("res"), resourceFile("assets"));
+
+        resourceLoader.reloadValuesResouces("fr");
+        assertEquals("Bonjour", resourceLoader.getStringValue(R.string.hello));
+        assertEquals("Local Copy", resourceLoader.getStringValue(R.string.copy));
+        assertEquals("Copy", resourceLoader.getStringValue(android.R.string.copy));
+        assertEquals("One beer", resourceLoader.getPluralStringValue(R.plurals.beer, 1));
+
+        resourceLoader.reloadValuesResouces("");
+        assertEquals("Hello", resourceLoader.getStringValue(R.string.hello));
+
+        resourceLoader.reloadValuesResouces("fr");
+        assertEquals("Bonjour", resourceLoader.getStringValue(R.string.hello));
+    }
+
     @Test(expected=I18nException.class)
     public void shouldThrowExceptionOnI18nStrictModeInflateView() throws Exception {
         ResourceLoader resourceLoader = new ResourceLoader(DEFAULT_SDK_VERSION, R.class, resourceFile("res"), resourceFile("layout"));
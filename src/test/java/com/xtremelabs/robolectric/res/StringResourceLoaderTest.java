@@ -6,6 +6,7 @@ import org.junit.Test;
 
 import static com.xtremelabs.robolectric.util.TestUtil.resourceFile;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class StringResourceLoaderTest {
@@ -33,4 +34,25 @@ public class StringResourceLoaderTest {
     public void shouldResolveStringReferences() throws Exception {
         assertThat(stringResourceLoader.getValue(R.string.greeting), equalTo("Howdy"));
     }
+
+    @Test
+    public void shouldFindValuesLoadedAfterTheyWereLookedUp() throws Exception {
+        assertThat(stringResourceLoader.getValue(R.string.hello), equalTo("Hello"));
+
+        new DocumentLoader(stringResourceLoader).loadResourceXmlDir(resourceFile("res", "values-fr"));
+
+        assertThat(stringResourceLoader.getValue(R.string.hello), equalTo("Bonjour"));
+    }
+
+    @Test
+    public void shouldFindValuesByIdsFromRClassesAddedAfterTheyWereLookedUp() throws Exception {
+        ResourceExtractor resourceExtractor = new ResourceExtractor();
+        StringResourceLoader stringResourceLoader = new StringResourceLoader(resourceExtractor);
+        new DocumentLoader(stringResourceLoader).loadResourceXmlDir(resourceFile("res", "values"));
+        assertThat(stringResourceLoader.getValue(R.string.hello), nullValue());
+
+        resourceExtractor.addLocalRClass(R.class);
+
+        assertThat(stringResourceLoader.getValue(R.string.hello), equalTo("Hello"));
+    }
 }
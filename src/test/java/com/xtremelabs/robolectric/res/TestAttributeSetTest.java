@@ -52,6 +52,47 @@ public class TestAttributeSetTest {
         assertEquals(0, testAttributeSet.getAttributeResourceValue("com.some.namespace", "id", 0));
     }
 
+    @Test
+    public void shouldSeeAttributesAddedOrChangedAfterTheyWereRead() throws Exception {
+        attributes.put("android:id", "@android:id/text1");
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, resourceExtractor, null, null, false);
+        assertThat(testAttributeSet.getAttributeResourceValue("android", "id", 0), equalTo(android.R.id.text1));
+        assertThat(testAttributeSet.getAttributeValue("android", "text"), nullValue());
+
+        testAttributeSet.put("android:id", "@android:id/text2");
+        testAttributeSet.put("android:text", "@string/hello");
+
+        assertThat(testAttributeSet.getAttributeResourceValue("android", "id", 0), equalTo(android.R.id.text2));
+        assertThat(testAttributeSet.getAttributeValue("android", "text"), equalTo("@string/hello"));
+    }
+
+    @Test
+    public void shouldNotChangeWhenTheMapItWasMadeFromChanges() throws Exception {
+        attributes.put("android:id", "@android:id/text1");
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, resourceExtractor, null, null, false);
+        assertThat(testAttributeSet.getAttributeValue("android", "text"), nullValue());
+
+        attributes.put("android:id", "@android:id/text2");
+        attributes.put("android:text", "@string/hello");
+
+        assertThat(testAttributeSet.getAttributeResourceValue("android", "id", 0), equalTo(android.R.id.text1));
+        assertThat(testAttributeSet.getAttributeValue("android", "text"), nullValue());
+    }
+
+    @Test
+    public void shouldShareTheMapItWasMadeFromUntilPutIsCalled() throws Exception {
+        attributes.put("android:id", "@android:id/text1");
+        TestAttributeSet first = new TestAttributeSet(attributes, null, null, resourceExtractor, null, null, false);
+        TestAttributeSet second = new TestAttributeSet(attributes, first.getAttributeNames(), first.getResourceIds(),
+                resourceExtractor, null, null, false);
+
+        second.put("android:id", "@android:id/text2");
+
+        assertThat(first.getAttributeResourceValue("android", "id", 0), equalTo(android.R.id.text1));
+        assertThat(second.getAttributeResourceValue("android", "id", 0), equalTo(android.R.id.text2));
+        assertThat(attributes.get("android:id"), equalTo("@android:id/text1"));
+    }
+
     @Test
     public void shouldCopeWithDefiningSystemIds() throws Exception {
         attributes.put("android:id", "@+id/text1");
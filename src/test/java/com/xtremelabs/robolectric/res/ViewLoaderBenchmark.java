@@ -0,0 +1,87 @@
+package com.xtremelabs.robolectric.res;
+
+import android.app.Activity;
+import android.content.Context;
+import com.xtremelabs.robolectric.R;
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static com.xtremelabs.robolectric.util.TestUtil.getSystemResourceDir;
+import static com.xtremelabs.robolectric.util.TestUtil.resourceFile;
+
+/**
+ * Measures the steady-state cost of inflating layouts, as when a list inflates its item layout over and over. Not run
+ * as part of the normal build; run it by hand with {@code mvn test -Dtest=ViewLoaderBenchmark}.
+ */
+@RunWith(WithTestDefaultsRunner.class)
+public class ViewLoaderBenchmark {
+    private static final int WARMUP_INFLATES = 2000;
+    private static final int MEASURED_INFLATES = 20000;
+
+    private ViewLoader viewLoader;
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        Robolectric.bindDefaultShadowClasses();
+
+        ResourceExtractor resourceExtractor = new ResourceExtractor();
+        resourceExtractor.addLocalRClass(R.class);
+        resourceExtractor.addSystemRClass(android.R.class);
+
+        StringResourceLoader stringResourceLoader = new StringResourceLoader(resourceExtractor);
+        new DocumentLoader(stringResourceLoader).loadLocalAndSystemResourceXmlDirs(resourceFile("res", "values"), getSystemResourceDir("values"));
+
+        viewLoader = new ViewLoader(resourceExtractor, new AttrResourceLoader(resourceExtractor));
+        viewLoader.addLayoutDirs(false, resourceFile("res", "layout"));
+        viewLoader.addLayoutDirs(true, getSystemResourceDir("layout"));
+
+        context = new Activity();
+    }
+
+    @Test
+    public void nestedLayoutWithInclude() throws Exception {
+        report("layout/main");
+    }
+
+    @Test
+    public void listItemLayout() throws Exception {
+        report("android:layout/simple_list_item_2");
+    }
+
+    private void report(String layoutName) {
+        for (int i = 0; i < WARMUP_INFLATES; i++) {
+            viewLoader.inflateView(context, layoutName);
+        }
+
+        long startAllocatedBytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_INFLATES; i++) {
+            viewLoader.inflateView(context, layoutName);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - startAllocatedBytes;
+
+        System.out.println(layoutName + ": " + (elapsed / MEASURED_INFLATES / 1000) + " us/inflate"
+                + (startAllocatedBytes < 0 ? "" : ", " + (allocated / MEASURED_INFLATES) + " bytes allocated/inflate")
+                + " over " + MEASURED_INFLATES + " inflates");
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, or -1 if the VM can't tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -330,7 +330,20 @@ public class ViewLoaderTest {
         ViewGroup parentView = (ViewGroup) viewLoader.inflateView(context, "layout/included_layout_parent");
         assertEquals(1, parentView.getChildCount());
     }
-    
+
+    @Test
+    public void shouldInflateLayoutsFromLayoutDirsWhenTheyreFirstNeeded() throws Exception {
+        ViewLoader lazyViewLoader = new ViewLoader(new ResourceExtractor(), new AttrResourceLoader(new ResourceExtractor()));
+        lazyViewLoader.addLayoutDirs(false, resourceFile("res", "layout"), resourceFile("res", "layout-land"));
+        lazyViewLoader.addLayoutDirs(true, getSystemResourceDir("layout"));
+
+        assertNotNull(lazyViewLoader.getViewNode("layout-land/different_screen_sizes"));
+        assertNull(lazyViewLoader.getViewNode("layout/no_such_layout"));
+        ViewGroup view = (ViewGroup) lazyViewLoader.inflateView(context, "layout/media");
+        TestUtil.assertInstanceOf(LinearLayout.class, view);
+        assertSame(lazyViewLoader.getViewNode("layout/media"), lazyViewLoader.getViewNode("layout/media"));
+    }
+
     @Test(expected=I18nException.class)
     public void shouldThrowI18nExceptionOnLayoutWithBareStrings() throws Exception {
     	viewLoader.setStrictI18n(true);
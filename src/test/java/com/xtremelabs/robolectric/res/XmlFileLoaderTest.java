@@ -301,6 +301,41 @@ public class XmlFileLoaderTest {
 				parser.getLineNumber(), equalTo(1));
 	}
 
+	@Test
+	public void testNext_skipsWhitespaceAndCdata()
+			throws XmlPullParserException, IOException {
+		forgeAndOpenDocument("<foo> <bar>baz</bar><![CDATA[qux]]></foo>");
+		assertThat(parser.getText(), equalTo(" bazqux"));
+		
+		assertThat(parser.next(), equalTo(XmlResourceParser.START_TAG));
+		assertThat(parser.getName(), equalTo("bar"));
+		assertThat(parser.next(), equalTo(XmlResourceParser.TEXT));
+		assertThat(parser.getText(), equalTo("baz"));
+		assertThat(parser.next(), equalTo(XmlResourceParser.END_TAG));
+		assertThat(parser.getName(), equalTo("bar"));
+		assertThat(parser.next(), equalTo(XmlResourceParser.END_TAG));
+		assertThat(parser.getName(), equalTo("foo"));
+		assertThat(parser.getDepth(), equalTo(1));
+		assertThat(parser.next(), equalTo(XmlResourceParser.END_DOCUMENT));
+		assertThat(parser.getName(), equalTo(""));
+	}
+	
+	@Test
+	public void testGetXml_parsersDoNotShareTheirPosition()
+			throws XmlPullParserException, IOException {
+		XmlResourceParser otherParser = xmlFileLoader.getXml(R.xml.preferences);
+		parseUntilNext(XmlResourceParser.START_TAG);
+		parseUntilNext(XmlResourceParser.START_TAG);
+		
+		assertThat(otherParser.next(), equalTo(XmlResourceParser.START_DOCUMENT));
+		assertThat(otherParser.next(), equalTo(XmlResourceParser.START_TAG));
+		assertThat(otherParser.getName(), equalTo("PreferenceScreen"));
+		assertThat(parser.getName(), equalTo("PreferenceCategory"));
+		assertThat(parser.getAttributeValue(
+				"http://schemas.android.com/apk/res/android", "android:key"),
+				equalTo("category"));
+	}
+
 	@Test
 	public void testGetEventType() throws XmlPullParserException, IOException {
 		int evt;
@@ -351,9 +386,9 @@ public class XmlFileLoaderTest {
 	public void testGetAttribute() throws XmlPullParserException, IOException {
 		forgeAndOpenDocument("<foo xmlns:bar=\"bar\"/>");
 		assertThat(
-				parser.getAttribute(
+				parser.getAttributeValue(parser.getAttribute(
 						"http://www.w3.org/2000/xmlns/",
-						"xmlns:bar").getNodeValue(),
+						"xmlns:bar")),
 				equalTo("bar"));
 	}
 
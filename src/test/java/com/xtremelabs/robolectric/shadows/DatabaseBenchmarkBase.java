@@ -0,0 +1,80 @@
+package com.xtremelabs.robolectric.shadows;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.xtremelabs.robolectric.Robolectric.shadowOf;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Measures bulk-loading rows through the shadow API, as when a test inserts its fixtures. Not run as part of the normal
+ * build; run a subclass by hand with e.g. {@code mvn test -Dtest=SQLiteDatabaseBenchmark}.
+ */
+public abstract class DatabaseBenchmarkBase {
+    private static final int ROWS = 10000;
+    private static final int WARMUP_RUNS = 3;
+
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() throws Exception {
+        database = SQLiteDatabase.openDatabase("path", null, 0);
+        database.execSQL("CREATE TABLE table_name (\n" +
+                "  id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                "  name VARCHAR(255),\n" +
+                "  big_int INTEGER,\n" +
+                "  ratio DOUBLE\n" +
+                ");");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Test
+    public void insertsInATransaction() throws Exception {
+        report("inserts in a transaction");
+    }
+
+    @Test
+    public void batchedInsertsInATransaction() throws Exception {
+        shadowOf(database).setBatchInsertsInTransactions(true);
+        report("batched inserts in a transaction");
+    }
+
+    private void report(String description) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            insertRows();
+        }
+
+        long start = System.nanoTime();
+        insertRows();
+        long elapsed = System.nanoTime() - start;
+
+        assertThat(database.query("table_name", null, null, null, null, null, null).getCount(), equalTo(ROWS));
+        System.out.println(getClass().getSimpleName() + ", " + description + ": " + (elapsed / 1000000) + " ms for " + ROWS + " rows, "
+                + (elapsed / ROWS / 1000.0) + " us/row");
+    }
+
+    private void insertRows() {
+        database.delete("table_name", null, null);
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                ContentValues values = new ContentValues();
+                values.put("name", "name" + i);
+                values.put("big_int", (long) i * 31);
+                values.put("ratio", i / 7.0);
+                database.insert("table_name", null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+}
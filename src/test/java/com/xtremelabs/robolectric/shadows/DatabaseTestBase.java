@@ -3,6 +3,7 @@ package com.xtremelabs.robolectric.shadows;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import com.xtremelabs.robolectric.Robolectric;
 import org.junit.After;
 import org.junit.Before;
@@ -101,6 +102,15 @@ public abstract class DatabaseTestBase {
         assertThat(byteValueFromDatabase, equalTo(byteColumnValue));
     }
 
+    @Test
+    public void testQueryIgnoresSelectionArgsWithoutASelection() throws Exception {
+        addChuck();
+
+        Cursor cursor = database.query("table_name", new String[]{"id", "name"}, null, new String[]{"1234"}, null, null, null);
+
+        assertThat(cursor.getCount(), equalTo(1));
+    }
+
     @Test
     public void testInsertAndRawQuery() throws Exception {
         String stringColumnValue = "column_value";
@@ -340,6 +350,149 @@ public abstract class DatabaseTestBase {
         assertNonEmptyDatabase();
     }
 
+    @Test
+    public void testBatchedInsertsAreWrittenBeforeReadsAndOnCommit() throws Exception {
+        shDatabase.setBatchInsertsInTransactions(true);
+        database.beginTransaction();
+        assertThat(addChuck(), equalTo(0L));
+        assertThat(addJulie(), equalTo(0L));
+        assertThat(database.query("table_name", null, null, null, null, null, null).getCount(), equalTo(2));
+
+        addPerson(1236L, "Chris");
+        ContentValues values = new ContentValues();
+        values.put("name", "Nameless");
+        database.insert("table_name", null, values);
+        database.setTransactionSuccessful();
+        database.endTransaction();
+
+        Cursor cursor = database.query("table_name", new String[]{"id", "name"}, "id=?", new String[]{"1236"}, null, null, null);
+        assertThat(cursor.moveToFirst(), equalTo(true));
+        assertIdAndName(cursor, 1236L, "Chris");
+        assertThat(database.query("table_name", null, null, null, null, null, null).getCount(), equalTo(4));
+    }
+
+    @Test
+    public void testBatchedInsertsAreDroppedOnRollback() throws Exception {
+        shDatabase.setBatchInsertsInTransactions(true);
+        database.beginTransaction();
+        addChuck();
+        addJulie();
+        database.endTransaction();
+
+        assertEmptyDatabase();
+    }
+
+    @Test
+    public void testInsertsOutsideTransactionsAreNeverBatched() throws Exception {
+        shDatabase.setBatchInsertsInTransactions(true);
+
+        assertThat(addChuck(), equalTo(1234L));
+        assertNonEmptyDatabase();
+    }
+
+    @Test
+    public void testBatchedInsertsAreWrittenBeforeCompiledStatementsRun() throws Exception {
+        SQLiteStatement count = database.compileStatement("SELECT COUNT(*) FROM table_name");
+        shDatabase.setBatchInsertsInTransactions(true);
+        database.beginTransaction();
+        addChuck();
+        assertThat(count.simpleQueryForLong(), equalTo(1L));
+
+        addJulie();
+        assertThat(count.simpleQueryForLong(), equalTo(2L));
+        database.setTransactionSuccessful();
+        database.endTransaction();
+    }
+
+    @Test
+    public void testBatchedInsertsAreWrittenBeforeAnotherDatabaseAtTheSamePathIsUsed() throws Exception {
+        SQLiteDatabase samePath = SQLiteDatabase.openDatabase("path", null, 0);
+        try {
+            shDatabase.setBatchInsertsInTransactions(true);
+            database.beginTransaction();
+            addChuck();
+            addJulie();
+
+            assertThat(samePath.query("table_name", null, null, null, null, null, null).getCount(), equalTo(2));
+            database.setTransactionSuccessful();
+            database.endTransaction();
+        } finally {
+            samePath.close();
+        }
+    }
+
+    @Test
+    public void testDatabasesAtDifferentPathsAreIsolated() throws Exception {
+        SQLiteDatabase other = SQLiteDatabase.openDatabase("other_path", null, 0);
+        try {
+            other.execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY, name VARCHAR(255));");
+            ContentValues values = new ContentValues();
+            values.put("id", 5678L);
+            values.put("name", "Elsewhere");
+            other.insert("table_name", null, values);
+            addChuck();
+
+            assertThat(database.query("table_name", null, null, null, null, null, null).getCount(), equalTo(1));
+            assertThat(other.query("table_name", null, null, null, null, null, null).getCount(), equalTo(1));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testInMemoryDatabasesAreNeverShared() throws Exception {
+        SQLiteDatabase first = SQLiteDatabase.create(null);
+        SQLiteDatabase second = SQLiteDatabase.create(null);
+        try {
+            first.execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY, name VARCHAR(255));");
+            assertThat(shadowOf(second).wasCreatedOnOpen(), equalTo(true));
+            second.execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY, name VARCHAR(255));");
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testDatabasesAtTheSamePathShareTablesUntilTheLastOneCloses() throws Exception {
+        SQLiteDatabase samePath = SQLiteDatabase.openDatabase("path", null, 0);
+        assertThat(shadowOf(samePath).wasCreatedOnOpen(), equalTo(false));
+        addChuck();
+        assertThat(samePath.query("table_name", null, null, null, null, null, null).getCount(), equalTo(1));
+
+        samePath.close();
+        assertThat(samePath.isOpen(), equalTo(false));
+        assertThat(database.isOpen(), equalTo(true));
+        assertNonEmptyDatabase();
+
+        database.close();
+        database = SQLiteDatabase.openDatabase("path", null, 0);
+        assertThat(shadowOf(database).wasCreatedOnOpen(), equalTo(true));
+        database.execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY, name VARCHAR(255));");
+        assertEmptyDatabase();
+    }
+
+    @Test
+    public void testWhereArgsAreBoundRatherThanQuoted() throws Exception {
+        addPerson(1234L, "O'Brien");
+        addJulie();
+
+        Cursor cursor = database.query("table_name", new String[]{"id", "name"}, "name=?", new String[]{"O'Brien"}, null, null, null);
+        assertThat(cursor.getCount(), equalTo(1));
+        assertThat(cursor.moveToFirst(), equalTo(true));
+        assertIdAndName(cursor, 1234L, "O'Brien");
+
+        ContentValues values = new ContentValues();
+        values.put("name", "D'Arcy");
+        assertThat(database.update("table_name", values, "name=?", new String[]{"O'Brien"}), equalTo(1));
+
+        cursor = database.rawQuery("SELECT id, name FROM table_name WHERE name=?", new String[]{"D'Arcy"});
+        assertThat(cursor.getCount(), equalTo(1));
+
+        assertThat(database.delete("table_name", "name=? OR name=?", new String[]{"D'Arcy", "Julie"}), equalTo(2));
+        assertEmptyDatabase();
+    }
+
     @Test
     public void testDeleteAll() throws Exception {
         addChuck();
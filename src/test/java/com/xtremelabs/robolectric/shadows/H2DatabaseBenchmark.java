@@ -0,0 +1,11 @@
+package com.xtremelabs.robolectric.shadows;
+
+import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import com.xtremelabs.robolectric.util.DatabaseConfig;
+import com.xtremelabs.robolectric.util.H2Map;
+import org.junit.runner.RunWith;
+
+@DatabaseConfig.UsingDatabaseMap(H2Map.class)
+@RunWith(WithTestDefaultsRunner.class)
+public class H2DatabaseBenchmark extends DatabaseBenchmarkBase {
+}
@@ -324,6 +324,50 @@ public class SQLiteCursorTest {
         assertThat(cursor.isNull(5), equalTo(true));
     }
 
+    @Test
+    public void shouldReadRowsFromTheResultSetWithoutRunningTheQueryAgain() throws Exception {
+        PreparedStatement statement = connection.prepareStatement("SELECT * FROM table_name WHERE id > ?;");
+        statement.setInt(1, 1234);
+        String sql = "SELECT * FROM table_name WHERE id > ?;";
+        cursor = new SQLiteCursor(null, null, null, null);
+        Robolectric.shadowOf(cursor).setResultSet(statement.executeQuery(), sql);
+
+        assertThat(cursor.getCount(), equalTo(2));
+        assertThat(cursor.moveToLast(), equalTo(true));
+        assertThat(cursor.getString(1), equalTo("Chris"));
+        assertThat(cursor.moveToPrevious(), equalTo(true));
+        assertThat(cursor.getString(1), equalTo("Julie"));
+    }
+
+    @Test
+    public void shouldKeepValuesAndNullsAcrossManyRows() throws Exception {
+        PreparedStatement insert = connection.prepareStatement("INSERT INTO table_name (id, name, long_value) VALUES(?, ?, ?);");
+        for (int i = 0; i < 200; i++) {
+            insert.setInt(1, i);
+            insert.setString(2, "name" + i);
+            if (i % 3 == 0) {
+                insert.setNull(3, java.sql.Types.BIGINT);
+            } else {
+                insert.setLong(3, i * 1000000000L);
+            }
+            insert.executeUpdate();
+        }
+        setupCursor();
+
+        assertThat(cursor.getCount(), equalTo(203));
+        int checked = 0;
+        while (cursor.moveToNext()) {
+            int id = cursor.getInt(0);
+            if (id < 200) {
+                assertThat(cursor.getString(1), equalTo("name" + id));
+                assertThat(cursor.isNull(2), equalTo(id % 3 == 0));
+                assertThat(cursor.getLong(2), equalTo(id % 3 == 0 ? 0L : id * 1000000000L));
+                checked++;
+            }
+        }
+        assertThat(checked, equalTo(200));
+    }
+
     private void addPeople() throws Exception {
         String[] inserts = {
                 "INSERT INTO table_name (id, name, long_value, float_value, double_value) VALUES(1234, 'Chuck', 3463, 1.5, 3.14159);",
@@ -0,0 +1,11 @@
+package com.xtremelabs.robolectric.shadows;
+
+import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import com.xtremelabs.robolectric.util.DatabaseConfig;
+import com.xtremelabs.robolectric.util.SQLiteMap;
+import org.junit.runner.RunWith;
+
+@DatabaseConfig.UsingDatabaseMap(SQLiteMap.class)
+@RunWith(WithTestDefaultsRunner.class)
+public class SQLiteDatabaseBenchmark extends DatabaseBenchmarkBase {
+}
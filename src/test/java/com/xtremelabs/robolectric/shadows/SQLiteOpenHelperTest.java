@@ -6,6 +6,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
 import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -25,6 +26,11 @@ public class SQLiteOpenHelperTest {
         helper = new TestOpenHelper(null, "path", null, 1);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        ShadowSQLiteOpenHelper.setUseSnapshots(false);
+    }
+
     @Test
     public void testInitialGetReadableDatabase() throws Exception {
         SQLiteDatabase database = helper.getReadableDatabase();
@@ -79,6 +85,58 @@ public class SQLiteOpenHelperTest {
         assertThat(database.isOpen(), equalTo(false));
     }
 
+    @Test
+    public void testHelpersWithTheSameNameShareADatabase() throws Exception {
+        TestOpenHelper other = new TestOpenHelper(null, "path", null, 1);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        database.execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY);");
+
+        SQLiteDatabase otherDatabase = other.getWritableDatabase();
+        assertThat(other.onCreateCalled, equalTo(false));
+        assertThat(otherDatabase.query("table_name", null, null, null, null, null, null).getCount(), equalTo(0));
+
+        other.close();
+        assertThat(database.isOpen(), equalTo(true));
+        assertThat(otherDatabase.isOpen(), equalTo(false));
+    }
+
+    @Test
+    public void testHelpersWithDifferentNamesDontShareADatabase() throws Exception {
+        TestOpenHelper other = new TestOpenHelper(null, "other_path", null, 1);
+        helper.getWritableDatabase().execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY);");
+
+        other.getWritableDatabase().execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY);");
+        assertThat(other.onCreateCalled, equalTo(true));
+    }
+
+    @Test
+    public void testSnapshotsReplaceLaterOnCreates() throws Exception {
+        ShadowSQLiteOpenHelper.setUseSnapshots(true);
+        SeedingOpenHelper first = new SeedingOpenHelper("path", 1);
+        assertThat(first.getWritableDatabase().query("table_name", null, null, null, null, null, null).getCount(), equalTo(1));
+        first.close();
+
+        SeedingOpenHelper second = new SeedingOpenHelper("other_path", 1);
+        SQLiteDatabase database = second.getWritableDatabase();
+        assertThat(second.onCreateCalled, equalTo(false));
+        assertThat(database.query("table_name", null, null, null, null, null, null).getCount(), equalTo(1));
+
+        SeedingOpenHelper newerVersion = new SeedingOpenHelper("third_path", 2);
+        newerVersion.getWritableDatabase();
+        assertThat(newerVersion.onCreateCalled, equalTo(true));
+    }
+
+    @Test
+    public void testWithoutSnapshotsOnCreateIsAlwaysCalled() throws Exception {
+        SeedingOpenHelper first = new SeedingOpenHelper("path", 1);
+        first.getWritableDatabase();
+        first.close();
+
+        SeedingOpenHelper second = new SeedingOpenHelper("path", 1);
+        second.getWritableDatabase();
+        assertThat(second.onCreateCalled, equalTo(true));
+    }
+
     private void assertInitialDB(SQLiteDatabase database) {
         assertDatabaseOpened(database);
         assertThat(helper.onCreateCalled, equalTo(true));
@@ -129,4 +187,23 @@ public class SQLiteOpenHelperTest {
             onOpenCalled = false;
         }
     }
+
+    private static class SeedingOpenHelper extends SQLiteOpenHelper {
+        public boolean onCreateCalled;
+
+        public SeedingOpenHelper(String name, int version) {
+            super(null, name, null, version);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase database) {
+            onCreateCalled = true;
+            database.execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR(255));");
+            database.execSQL("INSERT INTO table_name (name) VALUES ('Chuck');");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        }
+    }
 }
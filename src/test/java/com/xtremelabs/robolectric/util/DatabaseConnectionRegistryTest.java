@@ -0,0 +1,86 @@
+package com.xtremelabs.robolectric.util;
+
+import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import com.xtremelabs.robolectric.util.DatabaseConnectionRegistry.SharedConnection;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.Connection;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(WithTestDefaultsRunner.class)
+public class DatabaseConnectionRegistryTest {
+
+    @After
+    public void tearDown() throws Exception {
+        DatabaseConnectionRegistry.reset();
+    }
+
+    @Test
+    public void shouldCountOpensOfTheSamePath() throws Exception {
+        SharedConnection first = DatabaseConnectionRegistry.open("path");
+        SharedConnection second = DatabaseConnectionRegistry.open("path");
+        assertThat(second, sameInstance(first));
+        assertThat(first.getOpenCount(), equalTo(2));
+
+        DatabaseConnectionRegistry.release(first);
+        assertThat(DatabaseConnectionRegistry.isOpen("path"), equalTo(true));
+        assertThat(first.getConnection().isClosed(), equalTo(false));
+
+        DatabaseConnectionRegistry.release(second);
+        assertThat(DatabaseConnectionRegistry.isOpen("path"), equalTo(false));
+        assertThat(first.getConnection().isClosed(), equalTo(true));
+    }
+
+    @Test
+    public void shouldNeverShareUnnamedDatabases() throws Exception {
+        SharedConnection first = DatabaseConnectionRegistry.open(null);
+        SharedConnection second = DatabaseConnectionRegistry.open(null);
+
+        assertThat(second.getConnection(), not(sameInstance(first.getConnection())));
+    }
+
+    @Test
+    public void shouldNeverShareInMemoryDatabases() throws Exception {
+        SharedConnection first = DatabaseConnectionRegistry.open(DatabaseConnectionRegistry.MEMORY_DB_PATH);
+        SharedConnection second = DatabaseConnectionRegistry.open(DatabaseConnectionRegistry.MEMORY_DB_PATH);
+
+        assertThat(second.getConnection(), not(sameInstance(first.getConnection())));
+        assertThat(first.getOpenCount(), equalTo(1));
+        assertThat(DatabaseConnectionRegistry.isOpen(DatabaseConnectionRegistry.MEMORY_DB_PATH), equalTo(false));
+
+        DatabaseConnectionRegistry.release(first);
+        assertThat(first.getConnection().isClosed(), equalTo(true));
+        assertThat(second.getConnection().isClosed(), equalTo(false));
+    }
+
+    @Test
+    public void shouldUsePreCreatedConnections() throws Exception {
+        DatabaseConnectionRegistry.preCreateConnections(2);
+
+        Connection first = DatabaseConnectionRegistry.open("path").getConnection();
+        Connection second = DatabaseConnectionRegistry.open("other_path").getConnection();
+        DatabaseConnectionRegistry.preCreateConnections(1);
+        Connection third = DatabaseConnectionRegistry.open("third_path").getConnection();
+
+        assertThat(first, not(sameInstance(second)));
+        assertThat(third, not(sameInstance(first)));
+        assertThat(third, not(sameInstance(second)));
+    }
+
+    @Test
+    public void shouldCloseEverythingOnReset() throws Exception {
+        SharedConnection sharedConnection = DatabaseConnectionRegistry.open("path");
+
+        DatabaseConnectionRegistry.reset();
+
+        assertThat(DatabaseConnectionRegistry.isOpen("path"), equalTo(false));
+        assertThat(sharedConnection.getConnection().isClosed(), equalTo(true));
+        assertThat(DatabaseConnectionRegistry.open("path"), not(sameInstance(sharedConnection)));
+    }
+}
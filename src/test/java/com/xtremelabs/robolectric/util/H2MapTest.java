@@ -5,8 +5,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -75,4 +78,30 @@ public class H2MapTest {
         assertThat(map.getScrubSQL("INSERT OR IGNORE INTO "), equalTo("INSERT INTO "));
         assertThat(map.getScrubSQL("INSERT OR REPLACE INTO "), equalTo("INSERT INTO "));
     }
+
+    @Test
+    public void takeSnapshot_shouldRestoreTablesRowsAndIdentities() throws Exception {
+        Class.forName(map.getDriverClassName());
+        Connection original = DriverManager.getConnection(map.getConnectionString());
+        Connection restored = DriverManager.getConnection(map.getConnectionString());
+        try {
+            Statement statement = original.createStatement();
+            statement.execute(map.getScrubSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR(255));"));
+            statement.execute("INSERT INTO table_name (name) VALUES ('O''Brien');");
+
+            map.takeSnapshot(original).restoreInto(restored);
+
+            statement = restored.createStatement();
+            statement.execute("INSERT INTO table_name (name) VALUES ('Julie');");
+            ResultSet resultSet = statement.executeQuery("SELECT id, name FROM table_name ORDER BY id;");
+            assertThat(resultSet.next(), equalTo(true));
+            assertThat(resultSet.getString(2), equalTo("O'Brien"));
+            assertThat(resultSet.next(), equalTo(true));
+            assertThat(resultSet.getLong(1), equalTo(2L));
+            assertThat(resultSet.next(), equalTo(false));
+        } finally {
+            original.close();
+            restored.close();
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package com.xtremelabs.robolectric.util;
+
+import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(WithTestDefaultsRunner.class)
+public class PreparedStatementCacheTest {
+    private Connection connection;
+    private PreparedStatementCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DatabaseConfig.getMemoryConnection();
+        connection.createStatement().execute("CREATE TABLE table_name(id INTEGER PRIMARY KEY, name VARCHAR(255));");
+        cache = new PreparedStatementCache(connection, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.clear();
+        connection.close();
+    }
+
+    @Test
+    public void shouldReuseTheStatementForTheSameSql() throws Exception {
+        PreparedStatement insert = cache.prepareStatement("INSERT INTO table_name (id, name) VALUES (?, ?);", Statement.NO_GENERATED_KEYS);
+        insert.setInt(1, 1);
+        insert.setString(2, "Chuck");
+        insert.executeUpdate();
+
+        PreparedStatement again = cache.prepareStatement("INSERT INTO table_name (id, name) VALUES (?, ?);", Statement.NO_GENERATED_KEYS);
+        assertThat(again, sameInstance(insert));
+        again.setInt(1, 2);
+        again.setString(2, "Julie");
+        again.executeUpdate();
+
+        PreparedStatement query = cache.prepareQuery("SELECT name FROM table_name WHERE id = ?;");
+        query.setInt(1, 2);
+        ResultSet resultSet = query.executeQuery();
+        assertThat(resultSet.next(), equalTo(true));
+        assertThat(resultSet.getString(1), equalTo("Julie"));
+        assertThat(cache.size(), equalTo(2));
+    }
+
+    @Test
+    public void shouldNotShareStatementsPreparedWithDifferentOptions() throws Exception {
+        String sql = "SELECT name FROM table_name;";
+        PreparedStatement withKeys = cache.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        PreparedStatement withoutKeys = cache.prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+        assertThat(withoutKeys, not(sameInstance(withKeys)));
+        assertThat(cache.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS), sameInstance(withKeys));
+
+        assertThat(cache.prepareQuery(sql), not(sameInstance(withKeys)));
+        assertThat(cache.size(), equalTo(2));
+    }
+
+    @Test
+    public void shouldCloseTheLeastRecentlyUsedStatementWhenFull() throws Exception {
+        PreparedStatement first = cache.prepareQuery("SELECT id FROM table_name;");
+        PreparedStatement second = cache.prepareQuery("SELECT name FROM table_name;");
+        cache.prepareQuery("SELECT id FROM table_name;");
+        cache.prepareQuery("SELECT * FROM table_name;");
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(isClosed(first), equalTo(false));
+        assertThat(isClosed(second), equalTo(true));
+        assertThat(cache.prepareQuery("SELECT name FROM table_name;"), not(sameInstance(second)));
+    }
+
+    @Test
+    public void shouldCloseAllStatementsOnClear() throws Exception {
+        PreparedStatement statement = cache.prepareQuery("SELECT id FROM table_name;");
+
+        cache.clear();
+
+        assertThat(isClosed(statement), equalTo(true));
+        assertThat(cache.size(), equalTo(0));
+        assertThat(connection.isClosed(), equalTo(false));
+    }
+
+    // not every driver implements Statement.isClosed(), but none will run a closed statement
+    private static boolean isClosed(PreparedStatement statement) {
+        try {
+            statement.executeQuery().close();
+            return false;
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.xtremelabs.robolectric.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SQLiteMapTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        directory = new File("target/sqlite-map-test");
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldBackUpToPathsWithQuotesInThem() throws Exception {
+        assertBacksUpTo(new File(directory, "it's here.db"));
+        assertBacksUpTo(new File(directory, "\"quoted\" here.db"));
+        assertBacksUpTo(new File(directory, "it's_\"quoted\".db"));
+    }
+
+    @Test
+    public void shouldRefusePathsTheDriverCantParse() throws Exception {
+        try {
+            SQLiteMap.quote("it's \"quoted\".db");
+            fail();
+        } catch (SQLException expected) {
+            // the driver would report a syntax error
+        }
+    }
+
+    private void assertBacksUpTo(File file) throws Exception {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try {
+            Statement statement = connection.createStatement();
+            statement.executeUpdate("backup to " + SQLiteMap.quote(file.getAbsolutePath()));
+            statement.close();
+        } finally {
+            connection.close();
+        }
+        assertThat(file.exists(), equalTo(true));
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}